@@ -21,6 +21,14 @@ public enum Animal {
     DUCK_2(8),
     PACK_DONKEY(9);
 
+    private static final Animal[] ANIMALS_BY_UINT8 = new Animal[256];
+
+    static {
+        for (int i = 0; i < ANIMALS_BY_UINT8.length; i++) {
+            ANIMALS_BY_UINT8[i] = animalFromId(i);
+        }
+    }
+
     private final int id;
 
     Animal(int id) {
@@ -43,6 +51,14 @@ public enum Animal {
     }
 
     static Animal animalFromInt(short i) {
+        if (i < 0 || i >= ANIMALS_BY_UINT8.length) {
+            return NO_ANIMAL;
+        }
+
+        return ANIMALS_BY_UINT8[i];
+    }
+
+    private static Animal animalFromId(int i) {
         switch (i) {
             case 0:
                 return NO_ANIMAL;
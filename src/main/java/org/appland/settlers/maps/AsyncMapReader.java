@@ -0,0 +1,105 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reads a map file through an asynchronous file channel, one chunk at a time, and decodes it on the given executor
+ * once all of it is read. No thread is blocked while waiting for the reads.
+ *
+ * The result is checked before each chunk is read, so if the result is cancelled or completed in any other way, e.g.
+ * by a timeout, the reading stops within a chunk and the channel is closed.
+ *
+ */
+class AsyncMapReader implements CompletionHandler<Integer, Void> {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final MapLoader mapLoader;
+    private final AsynchronousFileChannel channel;
+    private final ByteBuffer buffer;
+    private final Executor executor;
+    private final CompletableFuture<MapFile> result;
+
+    AsyncMapReader(MapLoader mapLoader, AsynchronousFileChannel channel, int size, Executor executor) {
+        this.mapLoader = mapLoader;
+        this.channel = channel;
+        this.executor = executor;
+
+        buffer = ByteBuffer.allocate(size);
+        result = new CompletableFuture<>();
+
+        /* Closing the channel also aborts a read that is in progress */
+        result.whenComplete((mapFile, throwable) -> closeChannel());
+    }
+
+    CompletableFuture<MapFile> start() {
+        readNextChunk();
+
+        return result;
+    }
+
+    @Override
+    public void completed(Integer bytesRead, Void attachment) {
+        if (result.isDone()) {
+            return;
+        }
+
+        /* Decode what has been read if the file got shorter after its size was read */
+        if (bytesRead == -1 || buffer.position() == buffer.capacity()) {
+            decode();
+        } else {
+            readNextChunk();
+        }
+    }
+
+    @Override
+    public void failed(Throwable throwable, Void attachment) {
+
+        /* The read fails when the channel is closed because the result was cancelled */
+        result.completeExceptionally(throwable);
+    }
+
+    private void readNextChunk() {
+        buffer.limit(Math.min(buffer.position() + CHUNK_SIZE, buffer.capacity()));
+
+        try {
+            channel.read(buffer, buffer.position(), null, this);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void decode() {
+        buffer.flip();
+
+        try {
+            executor.execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+
+                try {
+                    result.complete(mapLoader.loadMapFromBuffer(buffer));
+                } catch (Exception | InvalidMapException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+
+            /* Nothing more can be done at this point */
+        }
+    }
+}
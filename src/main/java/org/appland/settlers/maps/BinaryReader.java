@@ -0,0 +1,48 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The primitive reads needed to decode a map file, regardless of whether the bytes come from a stream or a buffer
+ *
+ */
+interface BinaryReader {
+
+    short getUint8() throws IOException;
+
+    int getUint16() throws IOException;
+
+    long getUint32() throws IOException;
+
+    String getUint8ArrayAsString(int length) throws IOException;
+
+    String getUint8ArrayAsNullTerminatedString(int length) throws IOException;
+
+    byte[] getUint8ArrayAsBytes(int length) throws IOException;
+
+    ByteArray getUint8ArrayAsByteArray(int length) throws IOException;
+
+    void skip(int length) throws IOException;
+
+    /**
+     * Returns the next bytes as a read-only buffer. Readers over a buffer return a view of it instead of a copy.
+     *
+     * @param length
+     * @return
+     * @throws IOException
+     */
+    ByteBuffer getUint8ArrayAsBuffer(int length) throws IOException;
+
+    /**
+     * Returns all bytes that have not been read yet as a read-only buffer
+     *
+     * @return
+     * @throws IOException
+     */
+    ByteBuffer getRemainingAsBuffer() throws IOException;
+
+    void readUint8Plane(byte[] destination) throws IOException;
+
+    void readUint16Array(int[] destination) throws IOException;
+}
@@ -41,6 +41,14 @@ public class BlockHeader {
         return id == 10000 && mustBeZero == 0;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public long getMustBeZero() {
+        return mustBeZero;
+    }
+
     public int getWidth() {
         return width;
     }
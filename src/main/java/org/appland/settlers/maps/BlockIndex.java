@@ -0,0 +1,65 @@
+package org.appland.settlers.maps;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps track of where the data of each block starts in a buffer holding a map file, based on the block headers.
+ * This makes it possible to decode a block at any time without reading the blocks before it.
+ *
+ */
+class BlockIndex {
+    private final ByteBuffer source;
+    private final BlockHeader[] blockHeaders;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    BlockIndex(ByteBuffer source) {
+        this.source = source.duplicate();
+
+        blockHeaders = new BlockHeader[MapBlock.values().length];
+        offsets = new int[MapBlock.values().length];
+        lengths = new int[MapBlock.values().length];
+    }
+
+    /**
+     * Records that the data for the block starts at the given offset in the source buffer
+     *
+     * @param block
+     * @param blockHeader
+     * @param offset
+     */
+    void add(MapBlock block, BlockHeader blockHeader, int offset) {
+        blockHeaders[block.ordinal()] = blockHeader;
+        offsets[block.ordinal()] = offset;
+        lengths[block.ordinal()] = (int) (blockHeader.getMultiplier() * blockHeader.getBlockLength());
+    }
+
+    boolean contains(MapBlock block) {
+        return blockHeaders[block.ordinal()] != null;
+    }
+
+    BlockHeader getBlockHeader(MapBlock block) {
+        return blockHeaders[block.ordinal()];
+    }
+
+    int getOffset(MapBlock block) {
+        return offsets[block.ordinal()];
+    }
+
+    int getLength(MapBlock block) {
+        return lengths[block.ordinal()];
+    }
+
+    /**
+     * Copies the data of the block to the destination
+     *
+     * @param block
+     * @param destination
+     */
+    void copyBlock(MapBlock block, byte[] destination) {
+        ByteBuffer view = source.duplicate();
+
+        view.position(source.position() + getOffset(block));
+        view.get(destination, 0, getLength(block));
+    }
+}
@@ -0,0 +1,165 @@
+package org.appland.settlers.maps;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads primitives from a ByteBuffer using absolute indexing. The buffer's own position and limit are never changed,
+ * so the same buffer can be shared, e.g. a memory mapped file or a buffer received from the network.
+ *
+ */
+public class BufferReader implements BinaryReader {
+    private final ByteBuffer buffer;
+    private final ByteBuffer copyView;
+    private final int start;
+    private final int end;
+
+    private int position;
+
+    public BufferReader(ByteBuffer buffer, ByteOrder byteOrder) {
+        this.buffer = buffer.duplicate().order(byteOrder);
+        this.copyView = buffer.duplicate();
+        this.start = buffer.position();
+        this.end = buffer.limit();
+
+        position = start;
+    }
+
+    /**
+     * Returns the number of bytes read so far
+     *
+     * @return
+     */
+    public long getOffset() {
+        return position - start;
+    }
+
+    /**
+     * Returns a view of the whole buffer that is read, positioned at the start of the data
+     *
+     * @return
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer view = buffer.duplicate();
+
+        view.position(start);
+
+        return view;
+    }
+
+    public int remaining() {
+        return end - position;
+    }
+
+    @Override
+    public short getUint8() throws EOFException {
+        int index = advance(1);
+
+        return (short)(buffer.get(index) & 0xff);
+    }
+
+    @Override
+    public int getUint16() throws EOFException {
+        int index = advance(2);
+
+        return buffer.getShort(index) & 0xffff;
+    }
+
+    @Override
+    public long getUint32() throws EOFException {
+        int index = advance(4);
+
+        return buffer.getInt(index) & 0xffffffffL;
+    }
+
+    @Override
+    public String getUint8ArrayAsString(int length) throws EOFException {
+        return new String(getUint8ArrayAsBytes(length), StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String getUint8ArrayAsNullTerminatedString(int length) throws EOFException {
+        int index = advance(length);
+
+        /* Find the null termination byte if there is one */
+        int stringLength = 0;
+        while (stringLength < length && buffer.get(index + stringLength) != 0) {
+            stringLength++;
+        }
+
+        byte[] bytes = new byte[stringLength];
+
+        copy(index, bytes, 0, stringLength);
+
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public byte[] getUint8ArrayAsBytes(int length) throws EOFException {
+        byte[] bytes = new byte[length];
+
+        copy(advance(length), bytes, 0, length);
+
+        return bytes;
+    }
+
+    @Override
+    public ByteArray getUint8ArrayAsByteArray(int length) throws EOFException {
+        return new ByteArray(getUint8ArrayAsBytes(length), buffer.order());
+    }
+
+    @Override
+    public void skip(int length) throws EOFException {
+        advance(length);
+    }
+
+    @Override
+    public ByteBuffer getUint8ArrayAsBuffer(int length) throws EOFException {
+        int index = advance(length);
+
+        ByteBuffer view = copyView.duplicate();
+
+        view.limit(index + length);
+        view.position(index);
+
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public ByteBuffer getRemainingAsBuffer() throws EOFException {
+        return getUint8ArrayAsBuffer(remaining());
+    }
+
+    @Override
+    public void readUint8Plane(byte[] destination) throws EOFException {
+        copy(advance(destination.length), destination, 0, destination.length);
+    }
+
+    @Override
+    public void readUint16Array(int[] destination) throws EOFException {
+        int index = advance(destination.length * 2);
+
+        for (int i = 0; i < destination.length; i++) {
+            destination[i] = buffer.getShort(index + i * 2) & 0xffff;
+        }
+    }
+
+    private void copy(int index, byte[] destination, int offset, int length) {
+        copyView.position(index);
+        copyView.get(destination, offset, length);
+    }
+
+    private int advance(int length) throws EOFException {
+        if (length > end - position) {
+            throw new EOFException("Unexpected end of data at offset " + (position - start) + " when reading " + length + " bytes");
+        }
+
+        int index = position;
+
+        position = position + length;
+
+        return index;
+    }
+}
@@ -10,18 +10,44 @@ package org.appland.settlers.maps;
  * @author johan
  */
 public enum BuildableSite {
-    FLAG,
-    HUT,
-    HOUSE,
-    CASTLE,
-    MINE,
-    FLAG_NEXT_TO_INACCESSIBLE_TERRAIN,
-    CASTLE_NEAR_WATER,
-    MINE_NEAR_WATER,
-    OCCUPIED_BY_TREE,
-    OCCUPIED_BY_INACCESSIBLE_TERRAIN;
+    FLAG(1),
+    HUT(2),
+    HOUSE(3),
+    CASTLE(4),
+    MINE(5),
+    FLAG_NEXT_TO_INACCESSIBLE_TERRAIN(9),
+    CASTLE_NEAR_WATER(12),
+    MINE_NEAR_WATER(13),
+    OCCUPIED_BY_TREE(104),
+    OCCUPIED_BY_INACCESSIBLE_TERRAIN(120);
+
+    private static final BuildableSite[] BUILDABLE_SITES_BY_UINT8 = new BuildableSite[256];
+
+    static {
+        for (int i = 0; i < BUILDABLE_SITES_BY_UINT8.length; i++) {
+            BUILDABLE_SITES_BY_UINT8[i] = buildableSiteFromId(i);
+        }
+    }
+
+    private final int id;
+
+    BuildableSite(int id) {
+        this.id = id;
+    }
+
+    public int getValue() {
+        return id;
+    }
 
     static BuildableSite buildableSiteFromInt(short i) {
+        if (i < 0 || i >= BUILDABLE_SITES_BY_UINT8.length) {
+            return null;
+        }
+
+        return BUILDABLE_SITES_BY_UINT8[i];
+    }
+
+    private static BuildableSite buildableSiteFromId(int i) {
         switch (i) {
             case 0:
                 return null;
@@ -0,0 +1,191 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a collection of maps using a pool of worker threads. At most a fixed number of maps are loaded or waiting to
+ * be handled at any time, and the loaded maps are always handed over in the same order as the given sources.
+ *
+ * The maps are loaded with the options of the given loader but without debug information, since the output of the
+ * loads running in parallel would be interleaved. The loader keeps no state between loads, so all threads share it.
+ *
+ */
+class CorpusLoader {
+    private final MapLoader mapLoader;
+    private final int numberOfThreads;
+    private final int maxInFlight;
+
+    CorpusLoader(MapLoader mapLoader, int numberOfThreads, int maxInFlight) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("Need at least one thread but got " + numberOfThreads);
+        }
+
+        if (maxInFlight < numberOfThreads) {
+            throw new IllegalArgumentException("Need to allow at least one map in flight per thread");
+        }
+
+        this.mapLoader = mapLoader.withoutDebug();
+        this.numberOfThreads = numberOfThreads;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Loads all the maps and gives each loaded map to the handler, in the order of the sources. Loading stops at the
+     * first map that fails to load. The maps are not closed by the loader, see LoadedMapHandler.
+     *
+     * @param sources
+     * @param handler
+     * @return
+     * @throws IOException
+     * @throws InvalidMapException
+     * @throws SettlersMapLoadingException
+     */
+    Statistics loadAll(List<? extends MapSource> sources, LoadedMapHandler handler) throws IOException, InvalidMapException, SettlersMapLoadingException {
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+            Thread thread = new Thread(runnable, "map-loader");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        Deque<Future<LoadedMap>> inFlight = new ArrayDeque<>();
+        Statistics statistics = new Statistics();
+
+        long start = System.nanoTime();
+
+        try {
+            for (MapSource source : sources) {
+
+                /* Wait for the oldest map to be handled before starting to load more */
+                if (inFlight.size() >= maxInFlight) {
+                    handleNext(inFlight, handler, statistics);
+                }
+
+                inFlight.add(executor.submit(() -> load(source)));
+            }
+
+            while (!inFlight.isEmpty()) {
+                handleNext(inFlight, handler, statistics);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        statistics.elapsedNanos = System.nanoTime() - start;
+
+        return statistics;
+    }
+
+    private LoadedMap load(MapSource source) {
+        long start = System.nanoTime();
+
+        try {
+            long size = source.getSize();
+
+            MapFile mapFile = source.load(mapLoader);
+
+            return new LoadedMap(source.getName(), mapFile, size, System.nanoTime() - start, null);
+        } catch (Exception | InvalidMapException e) {
+            return new LoadedMap(source.getName(), null, 0, System.nanoTime() - start, e);
+        }
+    }
+
+    private void handleNext(Deque<Future<LoadedMap>> inFlight, LoadedMapHandler handler, Statistics statistics) throws IOException, InvalidMapException, SettlersMapLoadingException {
+        LoadedMap loadedMap;
+
+        try {
+            loadedMap = inFlight.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while loading maps");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        /* Rethrow the failure as it would have been thrown when loading the map directly */
+        Throwable failure = loadedMap.failure;
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof InvalidMapException) {
+            throw (InvalidMapException) failure;
+        } else if (failure instanceof SettlersMapLoadingException) {
+            throw (SettlersMapLoadingException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+
+        statistics.numberOfMaps = statistics.numberOfMaps + 1;
+        statistics.totalBytes = statistics.totalBytes + loadedMap.size;
+        statistics.totalLoadNanos = statistics.totalLoadNanos + loadedMap.loadNanos;
+
+        handler.handle(loadedMap);
+    }
+
+    /**
+     * Receives each map once it's loaded. The handler owns the map and must close it once it's done with it, or keep
+     * it, e.g. to return it to the caller.
+     */
+    interface LoadedMapHandler {
+        void handle(LoadedMap loadedMap);
+    }
+
+    static class LoadedMap {
+        final String name;
+        final MapFile mapFile;
+        final long size;
+        final long loadNanos;
+        private final Throwable failure;
+
+        LoadedMap(String name, MapFile mapFile, long size, long loadNanos, Throwable failure) {
+            this.name = name;
+            this.mapFile = mapFile;
+            this.size = size;
+            this.loadNanos = loadNanos;
+            this.failure = failure;
+        }
+    }
+
+    static class Statistics {
+        private int numberOfMaps;
+        private long totalBytes;
+        private long totalLoadNanos;
+        private long elapsedNanos;
+
+        int getNumberOfMaps() {
+            return numberOfMaps;
+        }
+
+        long getTotalBytes() {
+            return totalBytes;
+        }
+
+        double getElapsedSeconds() {
+            return elapsedNanos / 1_000_000_000.0;
+        }
+
+        double getAverageLoadMillis() {
+            return numberOfMaps == 0 ? 0 : totalLoadNanos / (double) numberOfMaps / 1_000_000.0;
+        }
+
+        double getMapsPerSecond() {
+            return numberOfMaps / getElapsedSeconds();
+        }
+
+        double getMegabytesPerSecond() {
+            return totalBytes / getElapsedSeconds() / (1024 * 1024);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.appland.settlers.maps;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Allocates and releases memory outside of the Java heap.
+ *
+ * Direct buffers are normally only freed once they are garbage collected. Releasing a buffer frees its memory right
+ * away through sun.misc.Unsafe.invokeCleaner, which is available from Java 9. If it can't be used the buffer is left
+ * to the garbage collector as usual, and the reason is returned by getReleaseUnavailableCause. A buffer must not be
+ * used, and no views of it may exist, once it's released.
+ *
+ */
+final class DirectMemory {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    private static final Throwable RELEASE_UNAVAILABLE_CAUSE;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Throwable releaseUnavailableCause = null;
+
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+
+            theUnsafe.setAccessible(true);
+
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            releaseUnavailableCause = e;
+        }
+
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        RELEASE_UNAVAILABLE_CAUSE = releaseUnavailableCause;
+    }
+
+    private DirectMemory() { }
+
+    static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Returns why buffers can't be released, or null if they can. Buffers that can't be released are freed by the
+     * garbage collector.
+     *
+     * @return
+     */
+    static Throwable getReleaseUnavailableCause() {
+        return RELEASE_UNAVAILABLE_CAUSE;
+    }
+
+    /**
+     * Frees the memory of a buffer returned by allocate
+     *
+     * @param buffer
+     */
+    static void release(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || !buffer.isDirect()) {
+            return;
+        }
+
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to free off-heap memory", e);
+        }
+    }
+}
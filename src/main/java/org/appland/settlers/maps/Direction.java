@@ -0,0 +1,31 @@
+package org.appland.settlers.maps;
+
+/**
+ * The six directions to the neighbours of a point, in clockwise order starting from the left. The offsets are the
+ * same as for left(), upLeft() etc. on game points.
+ *
+ */
+public enum Direction {
+    LEFT(-2, 0),
+    UP_LEFT(-1, 1),
+    UP_RIGHT(1, 1),
+    RIGHT(2, 0),
+    DOWN_RIGHT(1, -1),
+    DOWN_LEFT(-1, -1);
+
+    private final int dx;
+    private final int dy;
+
+    Direction(int dx, int dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    public int getDx() {
+        return dx;
+    }
+
+    public int getDy() {
+        return dy;
+    }
+}
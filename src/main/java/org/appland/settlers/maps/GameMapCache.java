@@ -0,0 +1,118 @@
+package org.appland.settlers.maps;
+
+import org.appland.settlers.model.GameMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Creates game maps for maps that are started many times, e.g. for each new game session. Each map is loaded and
+ * converted once, and new game maps are then created from the converted terrain without reading the map file or
+ * decoding any points again.
+ *
+ * The maps are loaded through a MapRepository, so a map is converted again if its file is modified or if it's evicted
+ * from the repository. The converted terrain is kept for as long as the repository keeps the map. It takes about eight
+ * bytes per point, which is not counted against the size of the repository.
+ *
+ */
+public class GameMapCache {
+    private final MapRepository mapRepository;
+    private final boolean doCropping;
+
+    /* Guarded by this. Keyed by the identity of the loaded map, which changes when the map is loaded again, so the
+       converted terrain is dropped once the repository no longer holds the map */
+    private final Map<MapFile, CompletableFuture<GameMapPrototype>> prototypes;
+
+    private int numberOfConversions;
+
+    public GameMapCache(MapLoader mapLoader, long maxSizeInBytes) {
+        mapRepository = new MapRepository(mapLoader, maxSizeInBytes);
+        doCropping = mapLoader.doCropping;
+        prototypes = new WeakHashMap<>();
+        numberOfConversions = 0;
+    }
+
+    /**
+     * Returns a new game map for the map. Each game map is independent of the others and can be changed freely.
+     *
+     * @param mapPath
+     * @return
+     * @throws Exception
+     * @throws InvalidMapException
+     */
+    public GameMap newGameMap(Path mapPath) throws Exception, InvalidMapException {
+        return getPrototype(mapPath).newGameMap();
+    }
+
+    /**
+     * Returns how many times a map has been converted, i.e. the number of new game maps that were not created from
+     * an already converted map
+     *
+     * @return
+     */
+    public synchronized int getNumberOfConversions() {
+        return numberOfConversions;
+    }
+
+    public synchronized void clear() {
+        prototypes.clear();
+
+        mapRepository.clear();
+    }
+
+    private GameMapPrototype getPrototype(Path mapPath) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        MapFile mapFile = mapRepository.getMap(mapPath);
+
+        CompletableFuture<GameMapPrototype> conversion;
+        boolean isConvertingThread = false;
+
+        /* Join a conversion that is done or in progress, or start a new one */
+        synchronized (this) {
+            conversion = prototypes.get(mapFile);
+
+            if (conversion == null) {
+                conversion = new CompletableFuture<>();
+
+                prototypes.put(mapFile, conversion);
+
+                isConvertingThread = true;
+            }
+        }
+
+        if (!isConvertingThread) {
+            try {
+                return conversion.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+
+                throw e;
+            }
+        }
+
+        try {
+            GameMapPrototype prototype = GameMapPrototype.fromMapFile(mapFile, doCropping);
+
+            synchronized (this) {
+                numberOfConversions = numberOfConversions + 1;
+            }
+
+            conversion.complete(prototype);
+
+            return prototype;
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                prototypes.remove(mapFile);
+            }
+
+            conversion.completeExceptionally(e);
+
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package org.appland.settlers.maps;
+
+import org.appland.settlers.model.DecorationType;
+import org.appland.settlers.model.DetailedVegetation;
+import org.appland.settlers.model.GameMap;
+import org.appland.settlers.model.Material;
+import org.appland.settlers.model.Player;
+import org.appland.settlers.model.Point;
+import org.appland.settlers.model.Size;
+import org.appland.settlers.model.Tree;
+import org.appland.settlers.model.TreeSize;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A map converted for the game, from which any number of GameMaps can be created. The conversion happens in two
+ * phases.
+ *
+ * First what to do with each point is decided from the planes of the MapFile, in parallel, and stored in flat arrays
+ * with one byte per point. Enum values are stored as their ordinal plus one, with 0 for none. This is done once, when
+ * the prototype is created.
+ *
+ * Then the decisions are applied to each new game map on the calling thread, point by point in the order they are
+ * stored in the map file, since the game map is not thread safe. The game map sees the same calls in the same order
+ * as when each point was decoded and applied in one go.
+ *
+ * The prototype doesn't refer to the MapFile, and it's not changed once it's created so it can be shared between
+ * threads. The exception is a prototype that is kept in step with a map that is being edited, through update, which
+ * must not be shared.
+ *
+ */
+class GameMapPrototype {
+    private static final int INCLUDED = 0x01;
+    private static final int STONE = 0x02;
+    private static final int DEAD_TREE = 0x04;
+    private static final int WILD_ANIMAL = 0x08;
+    private static final int HARBOR = 0x10;
+
+    private static final DetailedVegetation[] VEGETATIONS = DetailedVegetation.values();
+    private static final Material[] MATERIALS = Material.values();
+    private static final Size[] SIZES = Size.values();
+    private static final Tree.TreeType[] TREE_TYPES = Tree.TreeType.values();
+    private static final DecorationType[] DECORATION_TYPES = DecorationType.values();
+
+    private final int width;
+    private final int height;
+    private final int maxNumberOfPlayers;
+    private final List<Point> startingPoints;
+    private final int mapFileWidth;
+    private final int[] firstGamePointXOfRows;
+    private final int topGamePointY;
+    private final Decisions decisions;
+    private final boolean doCropping;
+    private final long decideNanos;
+
+    private GameMapPrototype(MapFile mapFile, boolean doCropping) {
+        long start = System.nanoTime();
+
+        int numberOfPoints = mapFile.getNumberOfPoints();
+
+        width = mapFile.getWidth() * 2 + 2;
+        height = mapFile.getHeight() + 3;
+        maxNumberOfPlayers = mapFile.getMaxNumberOfPlayers();
+        startingPoints = Collections.unmodifiableList(new ArrayList<>(mapFile.getStartingPoints()));
+        mapFileWidth = mapFile.getWidth();
+        firstGamePointXOfRows = new int[mapFile.getHeight()];
+        topGamePointY = mapFile.getGamePointY(0);
+        decisions = new Decisions(numberOfPoints);
+        this.doCropping = doCropping;
+
+        for (int row = 0; row < firstGamePointXOfRows.length; row++) {
+            firstGamePointXOfRows[row] = mapFile.getGamePointX(row * mapFileWidth);
+        }
+
+        IntStream.range(0, numberOfPoints).parallel().forEach(index -> decide(mapFile, index, decisions, index));
+
+        decideNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Converts the map. What to do with each point is decided in parallel.
+     *
+     * @param mapFile
+     * @param doCropping
+     * @return
+     */
+    static GameMapPrototype fromMapFile(MapFile mapFile, boolean doCropping) {
+        return new GameMapPrototype(mapFile, doCropping);
+    }
+
+    /**
+     * Creates a game map with the terrain, players and starting points of the map
+     *
+     * @return
+     * @throws Exception
+     */
+    GameMap newGameMap() throws Exception {
+
+        /* Generate list of players */
+        List<Player> players = new ArrayList<>();
+
+        for (int i = 0; i < maxNumberOfPlayers; i++) {
+            players.add(new Player("Player " + i, new Color(i*20, i*20, i*20)));
+        }
+
+        /* Create initial game map with correct dimensions */
+        GameMap gameMap = new GameMap(players, width, height);
+
+        applyTo(gameMap);
+
+        gameMap.setStartingPoints(new ArrayList<>(startingPoints));
+
+        return gameMap;
+    }
+
+    /**
+     * Returns the time it took to decide what to do with each point when the prototype was created
+     *
+     * @return
+     */
+    long getDecideNanos() {
+        return decideNanos;
+    }
+
+    /**
+     * Updates the game map with the points of the map file that have changed since the prototype was created or last
+     * updated, e.g. after a stroke with a brush in an editor. Only the changed points are decided again and only what
+     * has changed at them is applied, so the cost is proportional to the number of changed points.
+     *
+     * The game map can't remove anything that has been placed on it. If a stone, tree, decoration, wild animal,
+     * harbor or mineral is removed or replaced at any of the points, nothing is updated and false is returned. The map
+     * then has to be converted again.
+     *
+     * The positions of the points must not have changed.
+     *
+     * @param mapFile
+     * @param changedPoints
+     * @param gameMap
+     * @return
+     */
+    boolean update(MapFile mapFile, BitSet changedPoints, GameMap gameMap) {
+        Decisions updated = new Decisions(changedPoints.cardinality());
+
+        /* Decide everything first, so the game map is either updated at all the points or not at all */
+        int slot = 0;
+
+        for (int index = changedPoints.nextSetBit(0); index >= 0; index = changedPoints.nextSetBit(index + 1)) {
+            decide(mapFile, index, updated, slot);
+
+            if (!canBeApplied(index, updated, slot)) {
+                return false;
+            }
+
+            slot++;
+        }
+
+        slot = 0;
+
+        for (int index = changedPoints.nextSetBit(0); index >= 0; index = changedPoints.nextSetBit(index + 1)) {
+            applyChanges(index, updated, slot, gameMap);
+
+            decisions.copyFrom(updated, slot, index);
+
+            slot++;
+        }
+
+        return true;
+    }
+
+    private void decide(MapFile mapFile, int index, Decisions decisions, int slot) {
+        MapFilePoint mapFilePoint = mapFile.getSpot(index);
+        int x = mapFile.getGamePointX(index);
+        int y = mapFile.getGamePointY(index);
+
+        /* Filter points that have been cropped out */ // TODO: support cropping on/off
+        if (doCropping && (x < 1 || x >= width || y < 1 || y >= height)) {
+            return;
+        }
+
+        int flags = INCLUDED;
+
+        decisions.vegetationBelow[slot] = toCode(Utils.convertTextureToVegetation(mapFilePoint.getVegetationBelow()));
+        decisions.vegetationDownRight[slot] = toCode(Utils.convertTextureToVegetation(mapFilePoint.getVegetationDownRight()));
+
+        if (mapFilePoint.hasMineral()) {
+            decisions.minerals[slot] = toCode(Utils.resourceTypeToMaterial(mapFilePoint.getMineralType()));
+            decisions.mineralQuantities[slot] = toCode(mapFilePoint.getMineralQuantity());
+        }
+
+        if (mapFilePoint.hasStone()) {
+            flags = flags | STONE;
+        }
+
+        /* There is a tree or a decoration if its type is set, so each type is only decoded once */
+        decisions.trees[slot] = toCode(mapFilePoint.getTreeType());
+
+        if (mapFilePoint.hasDeadTree()) {
+            flags = flags | DEAD_TREE;
+        }
+
+        /* Only nature decorations that have no impact on the game are placed */
+        DecorationType decorationType = mapFilePoint.getNatureDecorationType();
+
+        if (decorationType != null && DecorationType.NO_IMPACT_ON_GAME.contains(decorationType)) {
+            decisions.decorations[slot] = toCode(decorationType);
+        }
+
+        if (mapFilePoint.hasWildAnimal()) {
+            flags = flags | WILD_ANIMAL;
+        }
+
+        if (mapFilePoint.isPossiblePlaceForHarbor()) {
+            flags = flags | HARBOR;
+        }
+
+        decisions.heights[slot] = (byte) mapFilePoint.getHeight();
+        decisions.flags[slot] = (byte) flags;
+    }
+
+    private boolean canBeApplied(int index, Decisions updated, int slot) {
+
+        /* Points that are cropped out stay out */
+        if ((decisions.flags[index] & INCLUDED) == 0) {
+            return true;
+        }
+
+        int removedFlags = decisions.flags[index] & ~updated.flags[slot];
+
+        if ((removedFlags & (STONE | DEAD_TREE | WILD_ANIMAL | HARBOR)) != 0) {
+            return false;
+        }
+
+        if (decisions.mineralQuantities[index] != 0 && updated.mineralQuantities[slot] == 0) {
+            return false;
+        }
+
+        if (decisions.trees[index] != 0 && decisions.trees[index] != updated.trees[slot]) {
+            return false;
+        }
+
+        return decisions.decorations[index] == 0 || decisions.decorations[index] == updated.decorations[slot];
+    }
+
+    private void applyChanges(int index, Decisions updated, int slot, GameMap gameMap) {
+        int flags = updated.flags[slot];
+
+        if ((flags & INCLUDED) == 0) {
+            return;
+        }
+
+        Point point = toGamePoint(index);
+        int addedFlags = flags & ~decisions.flags[index];
+
+        if (updated.vegetationBelow[slot] != decisions.vegetationBelow[index]) {
+            gameMap.setDetailedVegetationBelow(point, fromCode(VEGETATIONS, updated.vegetationBelow[slot]));
+        }
+
+        if (updated.vegetationDownRight[slot] != decisions.vegetationDownRight[index]) {
+            gameMap.setDetailedVegetationDownRight(point, fromCode(VEGETATIONS, updated.vegetationDownRight[slot]));
+        }
+
+        if (updated.mineralQuantities[slot] != 0 &&
+            (updated.minerals[slot] != decisions.minerals[index] ||
+             updated.mineralQuantities[slot] != decisions.mineralQuantities[index])) {
+            gameMap.setMineralAmount(point,
+                    fromCode(MATERIALS, updated.minerals[slot]),
+                    fromCode(SIZES, updated.mineralQuantities[slot]));
+        }
+
+        if ((addedFlags & STONE) != 0) {
+            gameMap.placeStone(point);
+        }
+
+        if (updated.trees[slot] != 0 && decisions.trees[index] == 0) {
+            gameMap.placeTree(point, fromCode(TREE_TYPES, updated.trees[slot]), TreeSize.FULL_GROWN);
+        }
+
+        if ((addedFlags & DEAD_TREE) != 0) {
+            gameMap.placeDeadTree(point);
+        }
+
+        if (updated.decorations[slot] != 0 && decisions.decorations[index] == 0) {
+            gameMap.placeDecoration(point, fromCode(DECORATION_TYPES, updated.decorations[slot]));
+        }
+
+        if ((addedFlags & WILD_ANIMAL) != 0) {
+            gameMap.placeWildAnimal(point);
+        }
+
+        if ((addedFlags & HARBOR) != 0) {
+            gameMap.setPossiblePlaceForHarbor(point);
+        }
+
+        if (updated.heights[slot] != decisions.heights[index]) {
+            gameMap.setHeightAtPoint(point, updated.heights[slot] & 0xff);
+        }
+    }
+
+    /**
+     * Sets the vegetation, minerals, stones, trees, decorations, wild animals, harbors and heights of the game map
+     *
+     * @param gameMap
+     */
+    void applyTo(GameMap gameMap) {
+        for (int index = 0; index < decisions.flags.length; index++) {
+            int flags = decisions.flags[index];
+
+            if ((flags & INCLUDED) == 0) {
+                continue;
+            }
+
+            Point point = toGamePoint(index);
+
+            gameMap.setDetailedVegetationBelow(point, fromCode(VEGETATIONS, decisions.vegetationBelow[index]));
+            gameMap.setDetailedVegetationDownRight(point, fromCode(VEGETATIONS, decisions.vegetationDownRight[index]));
+
+            if (decisions.mineralQuantities[index] != 0) {
+                gameMap.setMineralAmount(point,
+                        fromCode(MATERIALS, decisions.minerals[index]),
+                        fromCode(SIZES, decisions.mineralQuantities[index]));
+            }
+
+            if ((flags & STONE) != 0) {
+                gameMap.placeStone(point);
+            }
+
+            if (decisions.trees[index] != 0) {
+                gameMap.placeTree(point, fromCode(TREE_TYPES, decisions.trees[index]), TreeSize.FULL_GROWN);
+            }
+
+            if ((flags & DEAD_TREE) != 0) {
+                gameMap.placeDeadTree(point);
+            }
+
+            if (decisions.decorations[index] != 0) {
+                gameMap.placeDecoration(point, fromCode(DECORATION_TYPES, decisions.decorations[index]));
+            }
+
+            if ((flags & WILD_ANIMAL) != 0) {
+                gameMap.placeWildAnimal(point);
+            }
+
+            if ((flags & HARBOR) != 0) {
+                gameMap.setPossiblePlaceForHarbor(point);
+            }
+
+            gameMap.setHeightAtPoint(point, decisions.heights[index] & 0xff);
+        }
+    }
+
+    /**
+     * Creates the game point of the point in the map file, so no Point is kept for each point between game maps
+     */
+    private Point toGamePoint(int index) {
+        int row = index / mapFileWidth;
+
+        return new Point(firstGamePointXOfRows[row] + (index - row * mapFileWidth) * 2, topGamePointY - row);
+    }
+
+    private static byte toCode(Enum<?> value) {
+        return value == null ? 0 : (byte) (value.ordinal() + 1);
+    }
+
+    private static <T> T fromCode(T[] values, byte code) {
+        return code == 0 ? null : values[(code & 0xff) - 1];
+    }
+
+    /**
+     * What to do with each point, indexed like the points in the map file, or with a number of points when a prototype
+     * is updated
+     */
+    private static class Decisions {
+        private final byte[] flags;
+        private final byte[] vegetationBelow;
+        private final byte[] vegetationDownRight;
+        private final byte[] minerals;
+        private final byte[] mineralQuantities;
+        private final byte[] trees;
+        private final byte[] decorations;
+        private final byte[] heights;
+
+        private Decisions(int numberOfPoints) {
+            flags = new byte[numberOfPoints];
+            vegetationBelow = new byte[numberOfPoints];
+            vegetationDownRight = new byte[numberOfPoints];
+            minerals = new byte[numberOfPoints];
+            mineralQuantities = new byte[numberOfPoints];
+            trees = new byte[numberOfPoints];
+            decorations = new byte[numberOfPoints];
+            heights = new byte[numberOfPoints];
+        }
+
+        private void copyFrom(Decisions other, int otherIndex, int index) {
+            flags[index] = other.flags[otherIndex];
+            vegetationBelow[index] = other.vegetationBelow[otherIndex];
+            vegetationDownRight[index] = other.vegetationDownRight[otherIndex];
+            minerals[index] = other.minerals[otherIndex];
+            mineralQuantities[index] = other.mineralQuantities[otherIndex];
+            trees[index] = other.trees[otherIndex];
+            decorations[index] = other.decorations[otherIndex];
+            heights[index] = other.heights[otherIndex];
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.appland.settlers.maps;
+
+import org.appland.settlers.model.GameMap;
+
+import java.util.BitSet;
+
+/**
+ * Keeps a game map in step with a map file that is being edited, e.g. to preview the changes in an editor. After a
+ * change, such as a stroke with a brush, only the points that are dirty in the map file are converted again, so the
+ * preview is refreshed with work proportional to the change instead of to the map.
+ *
+ * Each point is converted from its own values in the planes only, so the neighbours of the changed points are not
+ * converted again.
+ *
+ * The game map can't remove what has been placed on it. When an edit removes or replaces a stone, tree, decoration,
+ * wild animal, harbor or mineral, the whole map is converted to a new game map instead.
+ *
+ */
+public class GameMapUpdater {
+    private final MapFile mapFile;
+    private final boolean doCropping;
+
+    private GameMapPrototype prototype;
+    private GameMap gameMap;
+
+    /**
+     * Converts the map file to a game map, which is then kept up to date by calling update
+     *
+     * @param mapLoader
+     * @param mapFile
+     * @throws Exception
+     */
+    public GameMapUpdater(MapLoader mapLoader, MapFile mapFile) throws Exception {
+        this.mapFile = mapFile;
+        this.doCropping = mapLoader.doCropping;
+
+        convert();
+    }
+
+    public GameMap getGameMap() {
+        return gameMap;
+    }
+
+    /**
+     * Applies the changes made to the map file since the last update. Returns true if the game map was updated in
+     * place, and false if the map had to be converted to a new game map, which is then returned by getGameMap.
+     *
+     * @return
+     * @throws Exception
+     */
+    public boolean update() throws Exception {
+        if (!mapFile.hasDirtyPoints()) {
+            return true;
+        }
+
+        BitSet dirtyPoints = mapFile.getDirtyPoints();
+
+        if (prototype.update(mapFile, dirtyPoints, gameMap)) {
+            mapFile.clearDirtyPoints();
+
+            return true;
+        }
+
+        convert();
+
+        return false;
+    }
+
+    private void convert() throws Exception {
+        mapFile.clearDirtyPoints();
+
+        prototype = GameMapPrototype.fromMapFile(mapFile, doCropping);
+        gameMap = prototype.newGameMap();
+    }
+}
@@ -17,10 +17,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Inspector {
 
@@ -40,6 +43,9 @@ public class Inspector {
     @Option(name = "--debug", usage = "Print debug information")
     boolean debug = false;
 
+    @Option(name = "--threads", usage = "Number of threads to use when loading all maps in a folder")
+    int threads = Runtime.getRuntime().availableProcessors();
+
     @Option(name = "--file", usage = "Map file to load")
     static String mapFilename;
 
@@ -70,6 +76,9 @@ public class Inspector {
     @Option(name = "--to-json", usage = "Writes a json file with information about the map")
     private String toJson = null;
 
+    @Option(name = "--cache-dir", usage = "Folder to cache decoded maps in so they load faster the next time")
+    private String cacheDir = null;
+
     /* Regular fields */
     private final MapLoader mapLoader;
 
@@ -90,8 +99,10 @@ public class Inspector {
 
         parser.parseArgument(args);
 
-        /* Load the map directly if a map filename is given */
-        if (inspector.isFileSelected()) {
+        inspector.mapLoader.debug = inspector.debug;
+
+        /* Load the map directly if a map filename is given and an option needs more than the header */
+        if (inspector.isFileSelected() && inspector.isFullMapNeeded()) {
             inspector.loadMapFile(mapFilename);
         }
 
@@ -108,7 +119,11 @@ public class Inspector {
 
         /* Print map info if selected */
         if (inspector.isPrintInfoSelected()) {
-            inspector.printMapInfo();
+            if (inspector.isFileSelected()) {
+                inspector.printMapInfo();
+            } else if (inspector.isDirSelected()) {
+                inspector.printMapInfoForAllFiles(inspector.dir);
+            }
         }
 
         /* Print the map from the file */
@@ -212,30 +227,50 @@ public class Inspector {
 
     private void printPointsSurroundingPointTypeInAllFiles(String dir, InformationType informationType) throws IOException, InvalidMapException, SettlersMapLoadingException {
 
-        List<MapFile> mapFiles = new ArrayList<>();
+        SurroundingPointsHistogram histogram = new SurroundingPointsHistogram(informationType);
 
-        /* List all maps */
-        List<Path> paths = Files.find(Paths.get(dir),
-                Integer.MAX_VALUE,
-                (path, basicFileAttributes) -> path.toFile().getName().matches(".*.SWD") ||
-                        path.toFile().getName().matches(".*.WLD")
-        ).collect(Collectors.toList());
+        /* List all maps, including the maps in archives */
+        List<Path> paths = new ArrayList<>(findMapFiles(dir));
 
-        /* Print information for points surrounding points of the selected type */
-        for (Path path : paths) {
+        paths.addAll(findArchives(dir));
 
-            if (Files.isDirectory(path)) {
-                continue;
+        Collections.sort(paths);
+
+        List<MapSource> sources = new ArrayList<>();
+
+        for (Path path : paths) {
+            if (isArchive(path)) {
+                sources.addAll(MapArchive.open(path).getMapEntries());
+            } else {
+                sources.add(MapSource.fromPath(path));
             }
+        }
 
-            String filename = path.toString();
+        /* Load the maps in parallel and add each map to the histograms once it's loaded. The maps are handed over in
+           the order of the paths so the result is deterministic, and each map is closed once it has been added */
+        CorpusLoader corpusLoader = new CorpusLoader(mapLoader, threads, threads * 2);
 
-            MapFile mapFile = mapLoader.loadMapFromFile(filename);
+        CorpusLoader.Statistics statistics = corpusLoader.loadAll(sources, loadedMap -> {
+            System.out.println(String.format("Loaded %s in %.3f ms", loadedMap.name, loadedMap.loadNanos / 1_000_000.0));
 
-            mapFiles.add(mapFile);
-        }
+            try (MapFile mapFile = loadedMap.mapFile) {
+                histogram.add(mapFile);
+            }
+        });
+
+        System.out.println(String.format("Loaded %d maps (%d bytes) in %.3f s using %d threads",
+                statistics.getNumberOfMaps(),
+                statistics.getTotalBytes(),
+                statistics.getElapsedSeconds(),
+                threads));
+        System.out.println(String.format(" - Average load time: %.3f ms", statistics.getAverageLoadMillis()));
+        System.out.println(String.format(" - Throughput: %.1f maps/s, %.1f MB/s",
+                statistics.getMapsPerSecond(),
+                statistics.getMegabytesPerSecond()));
+        System.out.println();
 
-        printPointsSurroundingPointTypeInMapFiles(mapFiles, informationType);
+        /* Print information for points surrounding points of the selected type */
+        histogram.print();
     }
 
     private boolean isDirSelected() {
@@ -243,104 +278,106 @@ public class Inspector {
     }
 
     private void printPointsSurroundingPointTypeInFile(InformationType informationType) {
-        printPointsSurroundingPointTypeInMapFiles(List.of(this.mapFile), informationType);
-    }
+        SurroundingPointsHistogram histogram = new SurroundingPointsHistogram(informationType);
 
-    private void printPointsSurroundingPointTypeInMapFiles(List<MapFile> mapFiles, InformationType informationType) {
-        Map<BuildableSite, Integer> availableConstructionCenter = new HashMap<>();
-        Map<BuildableSite, Integer> availableConstructionLeft = new HashMap<>();
-        Map<BuildableSite, Integer> availableConstructionUpLeft = new HashMap<>();
-        Map<BuildableSite, Integer> availableConstructionUpRight = new HashMap<>();
-        Map<BuildableSite, Integer> availableConstructionRight = new HashMap<>();
-        Map<BuildableSite, Integer> availableConstructionDownRight = new HashMap<>();
-        Map<BuildableSite, Integer> availableConstructionDownLeft = new HashMap<>();
+        histogram.add(this.mapFile);
 
-        Map<Texture, Integer> vegetationUpLeft = new HashMap<>();
-        Map<Texture, Integer> vegetationAbove = new HashMap<>();
-        Map<Texture, Integer> vegetationUpRight = new HashMap<>();
-        Map<Texture, Integer> vegetationDownRight = new HashMap<>();
-        Map<Texture, Integer> vegetationBelow = new HashMap<>();
-        Map<Texture, Integer> vegetationDownLeft = new HashMap<>();
+        histogram.print();
+    }
 
-        int measuredPoints = 0;
 
-        for (MapFile mapFile : mapFiles) {
+    private boolean isFileSelected() {
+        return mapFilename != null;
+    }
 
-            for (MapFilePoint mapFilePoint : mapFile.getMapFilePoints()) {
+    private boolean isPointsSurroundingTypeSelected() {
+        return this.informationAroundType != null && (this.informationAroundType.equals("dead-tree") || this.informationAroundType.equals("possible-shipyard"));
+    }
 
-                /* Filter points that don't match the requested information */
-                if (informationType == InformationType.DEAD_TREE && !mapFilePoint.hasDeadTree()) {
-                    continue;
-                }
+    private void printMapInfo() throws IOException, InvalidMapException {
+        MapHeader mapHeader = mapLoader.probeHeader(Paths.get(mapFilename));
 
-                Point point = mapFilePoint.getGamePointPosition();
+        System.out.println();
+        System.out.println("About the map:");
+        System.out.println(" - Title: " + mapHeader.getTitle());
+        System.out.println(" - Author: " + mapHeader.getAuthor());
+        System.out.println(" - Width: " + mapHeader.getWidth());
+        System.out.println(" - Height: " + mapHeader.getHeight());
+        System.out.println(" - Max number of players: " + mapHeader.getMaxNumberOfPlayers());
+    }
 
-                MapFilePoint mapFilePointLeft = mapFile.getMapFilePoint(point.left());
-                MapFilePoint mapFilePointUpLeft = mapFile.getMapFilePoint(point.upLeft());
-                MapFilePoint mapFilePointUpRight = mapFile.getMapFilePoint(point.upRight());
-                MapFilePoint mapFilePointRight = mapFile.getMapFilePoint(point.right());
-                MapFilePoint mapFilePointDownRight = mapFile.getMapFilePoint(point.downRight());
-                MapFilePoint mapFilePointDownLeft = mapFile.getMapFilePoint(point.downLeft());
+    /**
+     * Prints a line with information about each map in the directory, including the maps in archives. Only the header
+     * of each map file is read, while compressed maps in archives are inflated to get to their header.
+     *
+     * @param dir
+     * @throws IOException
+     * @throws InvalidMapException
+     * @throws SettlersMapLoadingException
+     */
+    private void printMapInfoForAllFiles(String dir) throws IOException, InvalidMapException, SettlersMapLoadingException {
+        List<Path> paths = new ArrayList<>(findMapFiles(dir));
 
-                incrementInMap(availableConstructionCenter, mapFilePoint.getBuildableSite());
-                incrementInMap(availableConstructionLeft, mapFilePointLeft.getBuildableSite());
-                incrementInMap(availableConstructionUpLeft, mapFilePointUpLeft.getBuildableSite());
-                incrementInMap(availableConstructionUpRight, mapFilePointUpRight.getBuildableSite());
-                incrementInMap(availableConstructionRight, mapFilePointRight.getBuildableSite());
-                incrementInMap(availableConstructionDownRight, mapFilePointDownRight.getBuildableSite());
-                incrementInMap(availableConstructionDownLeft, mapFilePointDownLeft.getBuildableSite());
-
-                incrementInMap(vegetationUpLeft, mapFilePointUpLeft.getVegetationBelow());
-                incrementInMap(vegetationAbove, mapFilePointUpLeft.getVegetationDownRight());
-                incrementInMap(vegetationUpRight, mapFilePointUpRight.getVegetationBelow());
-                incrementInMap(vegetationDownRight, mapFilePoint.getVegetationDownRight());
-                incrementInMap(vegetationBelow, mapFilePoint.getVegetationBelow());
-                incrementInMap(vegetationDownLeft, mapFilePointLeft.getVegetationDownRight());
+        paths.addAll(findArchives(dir));
 
-                measuredPoints = measuredPoints + 1;
+        Collections.sort(paths);
+
+        for (Path path : paths) {
+            if (isArchive(path)) {
+                for (MapArchive.Entry entry : MapArchive.open(path).getMapEntries()) {
+                    printMapInfoLine(entry.getName(), mapLoader.probeHeader(entry.getData()));
+                }
+            } else {
+                printMapInfoLine(path.toString(), mapLoader.probeHeader(path));
             }
         }
+    }
 
-        System.out.println();
-        System.out.println("Surrounding available construction");
-
-        System.out.println(" - Center: " + availableConstructionCenter);
-        System.out.println(" - Left: " + availableConstructionLeft);
-        System.out.println(" - Up-left: " + availableConstructionUpLeft);
-        System.out.println(" - Up-right: " + availableConstructionUpRight);
-        System.out.println(" - Right: " + availableConstructionRight);
-        System.out.println(" - Down-right: " + availableConstructionDownRight);
-        System.out.println(" - Down-left: " + availableConstructionDownLeft);
-
-        System.out.println();
-        System.out.println("Surrounding vegetation");
-
-        System.out.println(" - Up-left: " + vegetationUpLeft);
-        System.out.println(" - Above: " + vegetationAbove);
-        System.out.println(" - Up-right: " + vegetationUpRight);
-        System.out.println(" - Down-rRight: " + vegetationDownRight);
-        System.out.println(" - Below: " + vegetationBelow);
-        System.out.println(" - Down-left: " + vegetationDownLeft);
+    private static void printMapInfoLine(String name, MapHeader mapHeader) {
+        System.out.println(name + ": " +
+                mapHeader.getTitle() + ", " +
+                mapHeader.getAuthor() + ", " +
+                mapHeader.getWidth() + "x" + mapHeader.getHeight() + ", " +
+                mapHeader.getTerrainType() + ", " +
+                mapHeader.getMaxNumberOfPlayers() + " players");
+    }
 
-        System.out.println("(" + measuredPoints + " points measured)");
+    private List<Path> findMapFiles(String dir) throws IOException {
+        try (Stream<Path> found = Files.find(Paths.get(dir),
+                Integer.MAX_VALUE,
+                (path, basicFileAttributes) -> !basicFileAttributes.isDirectory() &&
+                        (path.toFile().getName().matches(".*.SWD") ||
+                         path.toFile().getName().matches(".*.WLD"))
+        )) {
+            return found.sorted().collect(Collectors.toList());
+        }
     }
 
-    private boolean isFileSelected() {
-        return mapFilename != null;
+    private List<Path> findArchives(String dir) throws IOException {
+        try (Stream<Path> found = Files.find(Paths.get(dir),
+                Integer.MAX_VALUE,
+                (path, basicFileAttributes) -> !basicFileAttributes.isDirectory() && isArchive(path)
+        )) {
+            return found.sorted().collect(Collectors.toList());
+        }
     }
 
-    private boolean isPointsSurroundingTypeSelected() {
-        return this.informationAroundType != null && (this.informationAroundType.equals("dead-tree") || this.informationAroundType.equals("possible-shipyard"));
+    private static boolean isArchive(Path path) {
+        return path.toFile().getName().toLowerCase().endsWith(".zip");
     }
 
-    private void printMapInfo() {
-        System.out.println();
-        System.out.println("About the map:");
-        System.out.println(" - Title: " + mapFile.getTitle());
-        System.out.println(" - Author: " + mapFile.getAuthor());
-        System.out.println(" - Width: " + mapFile.getWidth());
-        System.out.println(" - Height: " + mapFile.getHeight());
-        System.out.println(" - Max number of players: " + mapFile.getMaxNumberOfPlayers());
+    /**
+     * Returns true if any of the chosen options needs the full map and not only the header
+     *
+     * @return
+     */
+    private boolean isFullMapNeeded() {
+        return isPointsSurroundingTypeSelected() ||
+                isPrintMapFromFileChosen() ||
+                isCompareAvailableBuildingsChosen() ||
+                isPrintStartingPointsChosen() ||
+                isPrintPointInformationChosen() ||
+                isDumpSpotsChosen();
     }
 
     private boolean isPrintInfoSelected() {
@@ -355,12 +392,12 @@ public class Inspector {
         for (MapFilePoint mapFilePoint : mapFile.getMapFilePoints()) {
             Point point = mapFilePoint.getGamePointPosition();
 
-            MapFilePoint spotLeft = mapFile.getMapFilePoint(point.left());
-            MapFilePoint spotUpLeft = mapFile.getMapFilePoint(point.upLeft());
-            MapFilePoint spotDownLeft = mapFile.getMapFilePoint(point.downLeft());
-            MapFilePoint spotRight = mapFile.getMapFilePoint(point.right());
-            MapFilePoint spotUpRight = mapFile.getMapFilePoint(point.upRight());
-            MapFilePoint spotDownRight = mapFile.getMapFilePoint(point.downRight());
+            MapFilePoint spotLeft = mapFilePoint.getNeighbour(Direction.LEFT);
+            MapFilePoint spotUpLeft = mapFilePoint.getNeighbour(Direction.UP_LEFT);
+            MapFilePoint spotDownLeft = mapFilePoint.getNeighbour(Direction.DOWN_LEFT);
+            MapFilePoint spotRight = mapFilePoint.getNeighbour(Direction.RIGHT);
+            MapFilePoint spotUpRight = mapFilePoint.getNeighbour(Direction.UP_RIGHT);
+            MapFilePoint spotDownRight = mapFilePoint.getNeighbour(Direction.DOWN_RIGHT);
 
             System.out.print(" - " + point + " available: " + mapFilePoint.getBuildableSite() +
                     ", height: " + mapFilePoint.getHeight() +
@@ -466,7 +503,12 @@ public class Inspector {
      * @throws Exception
      */
     private void loadMapFile(String mapFilename) throws Exception, InvalidMapException {
-        mapFile = mapLoader.loadMapFromFile(mapFilename);
+        if (cacheDir != null) {
+            mapFile = new MapCache(Paths.get(cacheDir), mapLoader).load(Paths.get(mapFilename));
+        } else {
+            mapFile = mapLoader.loadMapFromFile(mapFilename);
+        }
+
         map = mapLoader.convertMapFileToGameMap(mapFile);
     }
 
@@ -865,22 +907,16 @@ public class Inspector {
             }
 
             MapFilePoint spot = mapFile.getMapFilePoint(point);
-            MapFilePoint spotLeft = mapFile.getMapFilePoint(point.left());
-            MapFilePoint spotUpLeft = mapFile.getMapFilePoint(point.upLeft());
-            MapFilePoint spotDownLeft = mapFile.getMapFilePoint(point.downLeft());
-            MapFilePoint spotRight = mapFile.getMapFilePoint(point.right());
-            MapFilePoint spotUpRight = mapFile.getMapFilePoint(point.upRight());
-            MapFilePoint spotDownRight = mapFile.getMapFilePoint(point.downRight());
 
             System.out.println(" - " + point + " - game: " + comparison.availableInGame + ", file: " + comparison.getAvailableInFile() +
                     ", distance to border: " + distanceToBorder +
                     ", distance to headquarter: " + distanceToHeadquarter +
-                    ", height differences: " + (spot.getHeight() - spotLeft.getHeight()) +
-                    ", " + (spot.getHeight() - spotUpLeft.getHeight()) +
-                    ", " + (spot.getHeight() - spotUpRight.getHeight()) +
-                    ", " + (spot.getHeight() - spotRight.getHeight()) +
-                    ", " + (spot.getHeight() - spotDownRight.getHeight()) +
-                    ", " + (spot.getHeight() - spotDownLeft.getHeight()));
+                    ", height differences: " + getHeightDifference(spot, Direction.LEFT) +
+                    ", " + getHeightDifference(spot, Direction.UP_LEFT) +
+                    ", " + getHeightDifference(spot, Direction.UP_RIGHT) +
+                    ", " + getHeightDifference(spot, Direction.RIGHT) +
+                    ", " + getHeightDifference(spot, Direction.DOWN_RIGHT) +
+                    ", " + getHeightDifference(spot, Direction.DOWN_LEFT));
 
             if (comparison.getAvailableInFile() == BuildableSite.OCCUPIED_BY_TREE) {
 
@@ -899,6 +935,24 @@ public class Inspector {
         System.out.println(" - Filtered: " + filtered);
     }
 
+    /**
+     * Returns the difference in height to the neighbour in the given direction, or "-" if the point is at the edge of
+     * the map
+     *
+     * @param spot
+     * @param direction
+     * @return
+     */
+    private static String getHeightDifference(MapFilePoint spot, Direction direction) {
+        MapFilePoint neighbour = spot.getNeighbour(direction);
+
+        if (neighbour == null) {
+            return "-";
+        }
+
+        return Integer.toString(spot.getHeight() - neighbour.getHeight());
+    }
+
     private boolean isComparisonUnreliable(int distanceToBorder, int distanceToHeadquarter) {
         return distanceToBorder < 4 || distanceToHeadquarter < 4;
     }
@@ -1002,10 +1056,106 @@ public class Inspector {
         }
     }
 
-    private <T> void incrementInMap(Map<T, Integer> map, T item) {
-        int amount = map.getOrDefault(item, 0);
+    /**
+     * Running histograms of what surrounds points of a given type. Maps are added one at a time so a map can be
+     * released as soon as it has been added.
+     */
+    private static class SurroundingPointsHistogram {
+        private final InformationType informationType;
+
+        private final Map<BuildableSite, Integer> availableConstructionCenter = new HashMap<>();
+        private final Map<BuildableSite, Integer> availableConstructionLeft = new HashMap<>();
+        private final Map<BuildableSite, Integer> availableConstructionUpLeft = new HashMap<>();
+        private final Map<BuildableSite, Integer> availableConstructionUpRight = new HashMap<>();
+        private final Map<BuildableSite, Integer> availableConstructionRight = new HashMap<>();
+        private final Map<BuildableSite, Integer> availableConstructionDownRight = new HashMap<>();
+        private final Map<BuildableSite, Integer> availableConstructionDownLeft = new HashMap<>();
+
+        private final Map<Texture, Integer> vegetationUpLeft = new HashMap<>();
+        private final Map<Texture, Integer> vegetationAbove = new HashMap<>();
+        private final Map<Texture, Integer> vegetationUpRight = new HashMap<>();
+        private final Map<Texture, Integer> vegetationDownRight = new HashMap<>();
+        private final Map<Texture, Integer> vegetationBelow = new HashMap<>();
+        private final Map<Texture, Integer> vegetationDownLeft = new HashMap<>();
+
+        private int measuredPoints = 0;
+
+        SurroundingPointsHistogram(InformationType informationType) {
+            this.informationType = informationType;
+        }
+
+        void add(MapFile mapFile) {
+            for (int index = 0; index < mapFile.getNumberOfPoints(); index++) {
+                MapFilePoint mapFilePoint = mapFile.getSpot(index);
 
-        map.put(item, amount + 1);
+                /* Filter points that don't match the requested information */
+                if (informationType == InformationType.DEAD_TREE && !mapFilePoint.hasDeadTree()) {
+                    continue;
+                }
+
+                /* Neighbours outside the map are null and are not counted */
+                MapFilePoint mapFilePointLeft = mapFilePoint.getNeighbour(Direction.LEFT);
+                MapFilePoint mapFilePointUpLeft = mapFilePoint.getNeighbour(Direction.UP_LEFT);
+                MapFilePoint mapFilePointUpRight = mapFilePoint.getNeighbour(Direction.UP_RIGHT);
+                MapFilePoint mapFilePointRight = mapFilePoint.getNeighbour(Direction.RIGHT);
+                MapFilePoint mapFilePointDownRight = mapFilePoint.getNeighbour(Direction.DOWN_RIGHT);
+                MapFilePoint mapFilePointDownLeft = mapFilePoint.getNeighbour(Direction.DOWN_LEFT);
+
+                incrementInMap(availableConstructionCenter, mapFilePoint.getBuildableSite());
+                incrementInMap(availableConstructionLeft, mapFilePointLeft, MapFilePoint::getBuildableSite);
+                incrementInMap(availableConstructionUpLeft, mapFilePointUpLeft, MapFilePoint::getBuildableSite);
+                incrementInMap(availableConstructionUpRight, mapFilePointUpRight, MapFilePoint::getBuildableSite);
+                incrementInMap(availableConstructionRight, mapFilePointRight, MapFilePoint::getBuildableSite);
+                incrementInMap(availableConstructionDownRight, mapFilePointDownRight, MapFilePoint::getBuildableSite);
+                incrementInMap(availableConstructionDownLeft, mapFilePointDownLeft, MapFilePoint::getBuildableSite);
+
+                incrementInMap(vegetationUpLeft, mapFilePointUpLeft, MapFilePoint::getVegetationBelow);
+                incrementInMap(vegetationAbove, mapFilePointUpLeft, MapFilePoint::getVegetationDownRight);
+                incrementInMap(vegetationUpRight, mapFilePointUpRight, MapFilePoint::getVegetationBelow);
+                incrementInMap(vegetationDownRight, mapFilePoint.getVegetationDownRight());
+                incrementInMap(vegetationBelow, mapFilePoint.getVegetationBelow());
+                incrementInMap(vegetationDownLeft, mapFilePointLeft, MapFilePoint::getVegetationDownRight);
+
+                measuredPoints = measuredPoints + 1;
+            }
+        }
+
+        void print() {
+            System.out.println();
+            System.out.println("Surrounding available construction");
+
+            System.out.println(" - Center: " + availableConstructionCenter);
+            System.out.println(" - Left: " + availableConstructionLeft);
+            System.out.println(" - Up-left: " + availableConstructionUpLeft);
+            System.out.println(" - Up-right: " + availableConstructionUpRight);
+            System.out.println(" - Right: " + availableConstructionRight);
+            System.out.println(" - Down-right: " + availableConstructionDownRight);
+            System.out.println(" - Down-left: " + availableConstructionDownLeft);
+
+            System.out.println();
+            System.out.println("Surrounding vegetation");
+
+            System.out.println(" - Up-left: " + vegetationUpLeft);
+            System.out.println(" - Above: " + vegetationAbove);
+            System.out.println(" - Up-right: " + vegetationUpRight);
+            System.out.println(" - Down-rRight: " + vegetationDownRight);
+            System.out.println(" - Below: " + vegetationBelow);
+            System.out.println(" - Down-left: " + vegetationDownLeft);
+
+            System.out.println("(" + measuredPoints + " points measured)");
+        }
+
+        private <T> void incrementInMap(Map<T, Integer> map, T item) {
+            int amount = map.getOrDefault(item, 0);
+
+            map.put(item, amount + 1);
+        }
+
+        private <T> void incrementInMap(Map<T, Integer> map, MapFilePoint neighbour, Function<MapFilePoint, T> property) {
+            if (neighbour != null) {
+                incrementInMap(map, property.apply(neighbour));
+            }
+        }
     }
 
     private enum InformationType {
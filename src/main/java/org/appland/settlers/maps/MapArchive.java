@@ -0,0 +1,269 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A ZIP archive with maps in it. The archive is memory mapped and its central directory is read directly, so the
+ * location of each entry's data in the file is known. Entries that are stored without compression are decoded in
+ * place from the mapped file, and compressed entries are inflated straight into the buffer they are decoded from.
+ *
+ * Only the plain ZIP format is supported, i.e. not ZIP64 or encrypted entries.
+ *
+ */
+class MapArchive {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final int FLAG_ENCRYPTED = 0x1;
+    private static final int FLAG_UTF8_NAME = 0x800;
+
+    private final Path path;
+    private final ByteBuffer archive;
+    private final List<Entry> entries;
+
+    private MapArchive(Path path, ByteBuffer archive) throws SettlersMapLoadingException {
+        this.path = path;
+        this.archive = archive.order(ByteOrder.LITTLE_ENDIAN);
+
+        entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    /**
+     * Memory maps the archive and reads its central directory
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     * @throws SettlersMapLoadingException
+     */
+    static MapArchive open(Path path) throws IOException, SettlersMapLoadingException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MapArchive(path, fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()));
+        }
+    }
+
+    /**
+     * Returns the entries that are maps, in the order they appear in the archive
+     *
+     * @return
+     */
+    List<Entry> getMapEntries() {
+        List<Entry> mapEntries = new ArrayList<>();
+
+        for (Entry entry : entries) {
+            if (entry.name.matches(".*.SWD") || entry.name.matches(".*.WLD")) {
+                mapEntries.add(entry);
+            }
+        }
+
+        return mapEntries;
+    }
+
+    private List<Entry> readCentralDirectory() throws SettlersMapLoadingException {
+        int endOfCentralDirectory = findEndOfCentralDirectory();
+
+        int numberOfEntries = archive.getShort(endOfCentralDirectory + 10) & 0xffff;
+        long centralDirectorySize = archive.getInt(endOfCentralDirectory + 12) & 0xffffffffL;
+        long centralDirectoryOffset = archive.getInt(endOfCentralDirectory + 16) & 0xffffffffL;
+
+        if (centralDirectoryOffset + centralDirectorySize > endOfCentralDirectory) {
+            throw new SettlersMapLoadingException("The central directory of " + path + " is outside of the archive");
+        }
+
+        List<Entry> centralDirectory = new ArrayList<>();
+        int position = (int) centralDirectoryOffset;
+
+        for (int i = 0; i < numberOfEntries; i++) {
+            if (position + CENTRAL_DIRECTORY_HEADER_SIZE > endOfCentralDirectory ||
+                archive.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new SettlersMapLoadingException("Invalid central directory entry " + i + " in " + path);
+            }
+
+            int flags = archive.getShort(position + 8) & 0xffff;
+            int method = archive.getShort(position + 10) & 0xffff;
+            long compressedSize = archive.getInt(position + 20) & 0xffffffffL;
+            long size = archive.getInt(position + 24) & 0xffffffffL;
+            int nameLength = archive.getShort(position + 28) & 0xffff;
+            int extraLength = archive.getShort(position + 30) & 0xffff;
+            int commentLength = archive.getShort(position + 32) & 0xffff;
+            long localHeaderOffset = archive.getInt(position + 42) & 0xffffffffL;
+
+            byte[] nameBytes = new byte[nameLength];
+
+            ByteBuffer nameView = archive.duplicate();
+
+            nameView.position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+            nameView.get(nameBytes);
+
+            Charset charset = (flags & FLAG_UTF8_NAME) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+            String name = new String(nameBytes, charset);
+
+            position = position + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+            /* Skip folders */
+            if (name.endsWith("/")) {
+                continue;
+            }
+
+            centralDirectory.add(new Entry(name, flags, method, compressedSize, size, localHeaderOffset));
+        }
+
+        return centralDirectory;
+    }
+
+    private int findEndOfCentralDirectory() throws SettlersMapLoadingException {
+        int last = archive.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_LENGTH);
+
+        /* The end of the central directory is followed by a comment of variable length so search backwards */
+        for (int position = last; position >= first; position--) {
+            if (archive.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return position;
+            }
+        }
+
+        throw new SettlersMapLoadingException(path + " is not a ZIP archive");
+    }
+
+    /**
+     * An entry in the archive
+     */
+    class Entry implements MapSource {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int flags, int method, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        @Override
+        public String getName() {
+            return path + "!/" + name;
+        }
+
+        /**
+         * Returns the name of the entry within the archive
+         *
+         * @return
+         */
+        String getEntryName() {
+            return name;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public MapFile load(MapLoader mapLoader) throws SettlersMapLoadingException, IOException, InvalidMapException {
+            return mapLoader.loadMapFromBuffer(getData());
+        }
+
+        /**
+         * Returns the uncompressed data of the entry. For stored entries this is a view into the mapped archive.
+         *
+         * @return
+         * @throws SettlersMapLoadingException
+         */
+        ByteBuffer getData() throws SettlersMapLoadingException {
+            if ((flags & FLAG_ENCRYPTED) != 0) {
+                throw new SettlersMapLoadingException("The entry " + getName() + " is encrypted");
+            }
+
+            if (size > Integer.MAX_VALUE || compressedSize > Integer.MAX_VALUE) {
+                throw new SettlersMapLoadingException("The entry " + getName() + " is too large");
+            }
+
+            /* The data starts after the local header, whose name and extra field may differ from the central directory */
+            int localHeader = (int) localHeaderOffset;
+
+            if (localHeader + LOCAL_HEADER_SIZE > archive.limit() || archive.getInt(localHeader) != LOCAL_HEADER_SIGNATURE) {
+                throw new SettlersMapLoadingException("Invalid local header for " + getName());
+            }
+
+            int nameLength = archive.getShort(localHeader + 26) & 0xffff;
+            int extraLength = archive.getShort(localHeader + 28) & 0xffff;
+            long dataOffset = (long) localHeader + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+            if (dataOffset + compressedSize > archive.limit()) {
+                throw new SettlersMapLoadingException("The data of " + getName() + " is outside of the archive");
+            }
+
+            ByteBuffer data = archive.duplicate();
+
+            data.position((int) dataOffset);
+            data.limit((int) (dataOffset + compressedSize));
+
+            if (method == STORED) {
+                return data.slice();
+            } else if (method == DEFLATED) {
+                return inflate(data);
+            }
+
+            throw new SettlersMapLoadingException("Unsupported compression method " + method + " for " + getName());
+        }
+
+        private ByteBuffer inflate(ByteBuffer compressed) throws SettlersMapLoadingException {
+            byte[] inflated = new byte[(int) size];
+            int inflatedLength = 0;
+
+            Inflater inflater = new Inflater(true);
+
+            try {
+                inflater.setInput(compressed);
+
+                while (inflatedLength < inflated.length && !inflater.finished()) {
+                    int result = inflater.inflate(inflated, inflatedLength, inflated.length - inflatedLength);
+
+                    /* The inflater makes no progress if the data ends early, needs a dictionary or is corrupt, and
+                       would then return 0 forever */
+                    if (result == 0) {
+                        throw new SettlersMapLoadingException("The entry " + getName() + " is truncated or corrupt");
+                    }
+
+                    inflatedLength = inflatedLength + result;
+                }
+            } catch (DataFormatException e) {
+                throw new SettlersMapLoadingException("The entry " + getName() + " is corrupt: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+
+            if (inflatedLength != inflated.length) {
+                throw new SettlersMapLoadingException("The entry " + getName() + " is truncated");
+            }
+
+            return ByteBuffer.wrap(inflated);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.appland.settlers.maps;
+
+/**
+ * The blocks that follow the header in a map file, in the order they appear. Each block has one uint8 per point.
+ * Blocks that are kept in a MapFile are associated with the plane they are decoded into.
+ *
+ */
+public enum MapBlock {
+    HEIGHTS("heights", MapPlane.HEIGHTS),
+    TEXTURES_BELOW("textures below", MapPlane.TEXTURE_BELOW),
+    TEXTURES_DOWN_RIGHT("textures down right", MapPlane.TEXTURE_DOWN_RIGHT),
+    ROADS("roads", null),
+    OBJECT_PROPERTIES("object properties", MapPlane.OBJECT_PROPERTIES),
+    OBJECT_TYPES("object types", MapPlane.OBJECT_TYPE),
+    ANIMALS("wild animals", MapPlane.ANIMALS),
+    IGNORED("ignored block", null),
+    BUILDABLE_SITES("buildable sites", MapPlane.BUILDABLE),
+    UNKNOWN("unknown block", null),
+    CURSOR_POSITIONS("cursor positions", null),
+    RESOURCES("resources", MapPlane.RESOURCES),
+    GOURAUD_SHADING("gouraud shading", MapPlane.SHADING),
+    PASSABLE_AREAS("passable areas", null);
+
+    private final String description;
+    private final MapPlane plane;
+
+    MapBlock(String description, MapPlane plane) {
+        this.description = description;
+        this.plane = plane;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the plane the block is decoded into, or null if the block is not kept
+     *
+     * @return
+     */
+    MapPlane getPlane() {
+        return plane;
+    }
+
+    /**
+     * Returns the block that is decoded into the given plane
+     *
+     * @param plane
+     * @return
+     */
+    static MapBlock fromPlane(MapPlane plane) {
+        for (MapBlock block : values()) {
+            if (block.plane == plane) {
+                return block;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,310 @@
+package org.appland.settlers.maps;
+
+import org.appland.settlers.model.Point;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps decoded maps in a folder on disk so that a map only has to be decoded from the original file once. Each
+ * cached map holds the planes, the starting points and the data that is needed to write the map back unchanged, e.g.
+ * the file header and the blocks that are not decoded. Loading from the cache maps the entry into memory and uses the
+ * planes and the other data in place, without copying them.
+ *
+ * An entry is used if the path, size and modification time of the original file are the same as when the entry was
+ * written, and if the checksum of the entry itself is correct. If only the modification time differs, e.g. because
+ * the file was copied or touched, the contents of the file are checksummed and the entry is still used if they are
+ * the same. Otherwise the map is loaded from the original file and the entry is written again.
+ *
+ * The format of an entry, all values little endian:
+ *
+ *  - Magic "SMMC" and format version (int)
+ *  - Size (long), modification time in milliseconds (long) and CRC32C (long) of the original file
+ *  - Path of the original file (string)
+ *  - CRC32C of the rest of the entry (long)
+ *  - The fields from the header of the map, as written by MapMetadataCodec
+ *  - Starting points in the game (int count, then the points)
+ *  - The data kept to write the map back unchanged, as written by MapMetadataCodec
+ *  - Number of points (int), followed by each plane in the order of MapPlane
+ *
+ * Strings are stored as an int length followed by UTF-8 bytes.
+ *
+ * Warnings about entries that can't be used are printed when the map loader prints debug information.
+ *
+ */
+public class MapCache {
+    private static final int MAGIC = 0x434d4d53; // "SMMC" when read as little endian bytes
+    private static final int VERSION = 4;
+
+    /* Where the modification time is in an entry */
+    private static final int MODIFIED_OFFSET = 4 + 4 + 8;
+
+    private final Path cacheDirectory;
+    private final MapLoader mapLoader;
+
+    public MapCache(Path cacheDirectory, MapLoader mapLoader) {
+        this.cacheDirectory = cacheDirectory;
+        this.mapLoader = mapLoader;
+    }
+
+    /**
+     * Returns the map from the cache if there is a valid entry for it. Otherwise the map is loaded from the file and
+     * stored in the cache.
+     *
+     * @param mapPath
+     * @return
+     * @throws SettlersMapLoadingException
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public MapFile load(Path mapPath) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        Path sourcePath = mapPath.toAbsolutePath().normalize();
+        Path entryPath = getEntryPath(sourcePath);
+
+        long size = Files.size(sourcePath);
+        long modified = Files.getLastModifiedTime(sourcePath).toMillis();
+
+        if (Files.exists(entryPath)) {
+            try {
+                MapFile mapFile = readEntry(entryPath, sourcePath, size, modified);
+
+                if (mapFile != null) {
+                    return mapFile;
+                }
+            } catch (IOException | RuntimeException e) {
+                mapLoader.printlnIfDebug("Warning: Ignoring unreadable cache entry " + entryPath + " for " + sourcePath + ": " + e);
+            }
+        }
+
+        MapFile mapFile = mapLoader.loadMapFromPath(sourcePath);
+
+        try {
+            writeEntry(entryPath, sourcePath, size, modified, checksumOfFile(sourcePath), mapFile);
+        } catch (IOException e) {
+            mapLoader.printlnIfDebug("Warning: Failed to write cache entry " + entryPath + " for " + sourcePath + ": " + e);
+        }
+
+        return mapFile;
+    }
+
+    private Path getEntryPath(Path sourcePath) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            byte[] hash = digest.digest(sourcePath.toString().getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder name = new StringBuilder();
+
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+
+            return cacheDirectory.resolve(name.append(".smmc").toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 must be supported", e);
+        }
+    }
+
+    /**
+     * Returns the cached map, or null if the entry is for another version of the file or was written by another
+     * version of the format
+     */
+    private MapFile readEntry(Path entryPath, Path sourcePath, long size, long modified) throws IOException {
+        MappedByteBuffer mappedEntry;
+
+        /* Map the entry privately so the planes can be used as they are, also when the map is changed. Changes are
+           never written to the entry, but a private mapping needs a channel that is open for writing */
+        try (FileChannel fileChannel = FileChannel.open(entryPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mappedEntry = fileChannel.map(FileChannel.MapMode.PRIVATE, 0, fileChannel.size());
+        }
+
+        ByteBuffer entry = mappedEntry.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (entry.getInt() != MAGIC || entry.getInt() != VERSION) {
+                return null;
+            }
+
+            long entrySize = entry.getLong();
+            long entryModified = entry.getLong();
+            long entryContentChecksum = entry.getLong();
+
+            if (entrySize != size || !sourcePath.toString().equals(MapMetadataCodec.getString(entry))) {
+                return null;
+            }
+
+            /* Only checksum the file if it may have changed, and keep using the entry if its contents are the same */
+            if (entryModified != modified) {
+                if (checksumOfFile(sourcePath) != entryContentChecksum) {
+                    return null;
+                }
+
+                updateModified(entryPath, modified);
+            }
+
+            long payloadChecksum = entry.getLong();
+
+            if (checksum(entry.duplicate()) != payloadChecksum) {
+                mapLoader.printlnIfDebug("Warning: Cache entry " + entryPath + " for " + sourcePath + " is corrupt");
+
+                return null;
+            }
+
+            MapFile mapFile = new MapFile();
+
+            MapMetadataCodec.read(entry, mapFile);
+
+            int numberOfStartingPoints = MapMetadataCodec.getCount(entry);
+            List<Point> startingPoints = new ArrayList<>();
+
+            for (int i = 0; i < numberOfStartingPoints; i++) {
+                startingPoints.add(new Point(entry.getInt(), entry.getInt()));
+            }
+
+            mapFile.setStartingPoints(startingPoints);
+
+            MapMetadataCodec.readRetainedData(entry, mapFile);
+
+            int numberOfPoints = entry.getInt();
+
+            if (numberOfPoints < 0 || (long) numberOfPoints * MapPlane.values().length > entry.remaining()) {
+                throw new IllegalArgumentException("Invalid number of points " + numberOfPoints);
+            }
+
+            /* Use the planes in the mapped entry instead of copying them */
+            ByteBuffer[] planes = new ByteBuffer[MapPlane.values().length];
+
+            for (MapPlane plane : MapPlane.values()) {
+                ByteBuffer view = entry.slice();
+
+                view.limit(numberOfPoints);
+
+                planes[plane.ordinal()] = view;
+
+                entry.position(entry.position() + numberOfPoints);
+            }
+
+            mapFile.setPlaneBuffers(numberOfPoints, planes);
+            mapFile.mapFilePointsToGamePoints();
+
+            return mapFile;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            mapLoader.printlnIfDebug("Warning: Cache entry " + entryPath + " for " + sourcePath + " is truncated or corrupt");
+
+            return null;
+        }
+    }
+
+    /**
+     * Writes the new modification time of the original file to the entry, after checking that its contents have not
+     * changed. The modification time is not covered by the checksum of the entry.
+     */
+    private void updateModified(Path entryPath, long modified) {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putLong(modified);
+        buffer.flip();
+
+        try (FileChannel fileChannel = FileChannel.open(entryPath, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer, MODIFIED_OFFSET + buffer.position());
+            }
+        } catch (IOException e) {
+            mapLoader.printlnIfDebug("Warning: Failed to update cache entry " + entryPath + ": " + e);
+        }
+    }
+
+    private void writeEntry(Path entryPath, Path sourcePath, long size, long modified, long contentChecksum, MapFile mapFile) throws IOException {
+        int numberOfPoints = mapFile.getNumberOfPoints();
+        byte[] path = sourcePath.toString().getBytes(StandardCharsets.UTF_8);
+
+        /* Build the payload first so its checksum can go in the header */
+        ByteBuffer payload = ByteBuffer.allocate(estimatePayloadSize(mapFile)).order(ByteOrder.LITTLE_ENDIAN);
+
+        MapMetadataCodec.write(payload, mapFile);
+
+        payload.putInt(mapFile.getStartingPoints().size());
+
+        for (Point point : mapFile.getStartingPoints()) {
+            payload.putInt(point.x);
+            payload.putInt(point.y);
+        }
+
+        MapMetadataCodec.writeRetainedData(payload, mapFile);
+
+        payload.putInt(numberOfPoints);
+
+        for (MapPlane plane : MapPlane.values()) {
+            payload.put(mapFile.getPlane(plane), 0, numberOfPoints);
+        }
+
+        payload.flip();
+
+        ByteBuffer header = ByteBuffer.allocate(4 + 4 + 8 + 8 + 8 + 4 + path.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(size);
+        header.putLong(modified);
+        header.putLong(contentChecksum);
+        header.putInt(path.length);
+        header.put(path);
+        header.putLong(checksum(payload.duplicate()));
+
+        header.flip();
+
+        /* Write to a temporary file and move it in place so a reader never sees a half written entry */
+        Files.createDirectories(cacheDirectory);
+
+        Path temporaryPath = Files.createTempFile(cacheDirectory, "entry", ".tmp");
+
+        try {
+            try (FileChannel fileChannel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {header, payload};
+
+                while (header.hasRemaining() || payload.hasRemaining()) {
+                    fileChannel.write(buffers);
+                }
+            }
+
+            Files.move(temporaryPath, entryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    private static int estimatePayloadSize(MapFile mapFile) {
+        return MapMetadataCodec.sizeOf(mapFile) +
+                4 + 8 * mapFile.getStartingPoints().size() +
+                MapMetadataCodec.sizeOfRetainedData(mapFile) +
+                4 + MapPlane.values().length * mapFile.getNumberOfPoints();
+    }
+
+    private static long checksumOfFile(Path path) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return checksum(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()));
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+
+        crc.update(buffer);
+
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,296 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads maps in the compact .smm container format written by MapContainerWriter.
+ *
+ * The container holds the fields from the header of the map and each plane as separate sections, listed in a table
+ * of contents at the start of the file. Each section can be read on its own, e.g. to only get the header or a single
+ * plane, and the planes of a map are read in parallel. The game points are calculated when the map is read, so they
+ * are not stored.
+ *
+ * The format, all values little endian:
+ *
+ *  - Magic "SMMF", format version, number of points and number of sections (int)
+ *  - For each section: id, compression (int), offset from the start of the file (long), stored length, uncompressed
+ *    length (int) and CRC32C of the uncompressed data (long)
+ *  - The data of each section, either stored as is or DEFLATE compressed
+ *
+ * Section 0 holds the fields from the header, as written by MapMetadataCodec. Section 1 + n holds the plane with
+ * ordinal n in MapPlane. The last section holds the data that is needed to write the map back to a map file unchanged,
+ * e.g. the file header and the blocks that are not decoded, as written by MapMetadataCodec.
+ *
+ */
+public class MapContainerReader {
+    static final int MAGIC = 0x464d4d53; // "SMMF" when read as little endian bytes
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 * 4;
+    static final int TOC_ENTRY_SIZE = 4 + 4 + 8 + 4 + 4 + 8;
+
+    static final int STORED = 0;
+    static final int DEFLATE = 1;
+
+    private static final int METADATA_SECTION = 0;
+    private static final int RETAINED_DATA_SECTION = 1 + MapPlane.values().length;
+
+    private final ByteBuffer source;
+    private final int numberOfPoints;
+    private final int[] compressions;
+    private final int[] offsets;
+    private final int[] storedLengths;
+    private final int[] lengths;
+    private final long[] checksums;
+
+    /**
+     * Reads the table of contents of the container held between the buffer's position and limit. The sections are
+     * read from the buffer when they are requested.
+     *
+     * @param buffer
+     * @throws SettlersMapLoadingException
+     */
+    public MapContainerReader(ByteBuffer buffer) throws SettlersMapLoadingException {
+        source = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            ByteBuffer header = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.getInt() != MAGIC) {
+                throw new SettlersMapLoadingException("Not a map container");
+            }
+
+            int version = header.getInt();
+
+            if (version != VERSION) {
+                throw new SettlersMapLoadingException("Unsupported map container version " + version);
+            }
+
+            numberOfPoints = header.getInt();
+
+            int numberOfSections = header.getInt();
+
+            if (numberOfPoints < 0 || numberOfSections != RETAINED_DATA_SECTION + 1) {
+                throw new SettlersMapLoadingException("Invalid map container with " + numberOfPoints + " points and "
+                        + numberOfSections + " sections");
+            }
+
+            compressions = new int[numberOfSections];
+            offsets = new int[numberOfSections];
+            storedLengths = new int[numberOfSections];
+            lengths = new int[numberOfSections];
+            checksums = new long[numberOfSections];
+
+            for (int i = 0; i < numberOfSections; i++) {
+                int id = header.getInt();
+
+                if (id < 0 || id >= numberOfSections) {
+                    throw new SettlersMapLoadingException("Invalid section id " + id);
+                }
+
+                compressions[id] = header.getInt();
+
+                long offset = header.getLong();
+
+                storedLengths[id] = header.getInt();
+                lengths[id] = header.getInt();
+                checksums[id] = header.getLong();
+
+                if (offset < 0 || storedLengths[id] < 0 || offset + storedLengths[id] > source.limit()) {
+                    throw new SettlersMapLoadingException("Section " + id + " is outside of the container");
+                }
+
+                offsets[id] = (int) offset;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new SettlersMapLoadingException("The map container is truncated");
+        }
+    }
+
+    /**
+     * Opens the container by memory mapping the file
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     * @throws SettlersMapLoadingException
+     */
+    public static MapContainerReader open(Path path) throws IOException, SettlersMapLoadingException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MapContainerReader(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()));
+        }
+    }
+
+    /**
+     * Reads only the section with the header fields
+     *
+     * @return
+     * @throws SettlersMapLoadingException
+     */
+    public MapHeader readHeader() throws SettlersMapLoadingException {
+        MapFile mapFile = new MapFile();
+
+        readMetadata(mapFile);
+
+        return new MapHeader(mapFile);
+    }
+
+    /**
+     * Reads a single plane
+     *
+     * @param plane
+     * @return
+     * @throws SettlersMapLoadingException
+     */
+    byte[] readPlane(MapPlane plane) throws SettlersMapLoadingException {
+        byte[] data = new byte[numberOfPoints];
+
+        readSection(1 + plane.ordinal(), data);
+
+        return data;
+    }
+
+    /**
+     * Reads the whole map. The planes are read in parallel on the common fork/join pool while the game points are
+     * calculated on the calling thread.
+     *
+     * @return
+     * @throws SettlersMapLoadingException
+     * @throws InvalidMapException
+     */
+    public MapFile readMapFile() throws SettlersMapLoadingException, InvalidMapException {
+        MapFile mapFile = new MapFile();
+
+        readMetadata(mapFile);
+
+        mapFile.allocatePlanes(numberOfPoints);
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        SettlersMapLoadingException[] failures = new SettlersMapLoadingException[MapPlane.values().length];
+
+        for (MapPlane plane : MapPlane.values()) {
+            byte[] data = mapFile.getPlane(plane);
+
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    readSection(1 + plane.ordinal(), data);
+                } catch (SettlersMapLoadingException e) {
+                    failures[plane.ordinal()] = e;
+                }
+            }));
+        }
+
+        mapFile.mapFilePointsToGamePoints();
+
+        /* Joining the tasks also makes the planes and the failures visible to this thread */
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        for (SettlersMapLoadingException failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        readRetainedData(mapFile);
+
+        mapFile.translateFileStartingPointsToGamePoints();
+
+        return mapFile;
+    }
+
+    private void readMetadata(MapFile mapFile) throws SettlersMapLoadingException {
+        byte[] data = new byte[lengths[METADATA_SECTION]];
+
+        readSection(METADATA_SECTION, data);
+
+        try {
+            MapMetadataCodec.read(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN), mapFile);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new SettlersMapLoadingException("Invalid header section in map container: " + e.getMessage());
+        }
+    }
+
+    private void readRetainedData(MapFile mapFile) throws SettlersMapLoadingException {
+        byte[] data = new byte[lengths[RETAINED_DATA_SECTION]];
+
+        readSection(RETAINED_DATA_SECTION, data);
+
+        try {
+            MapMetadataCodec.readRetainedData(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN), mapFile);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new SettlersMapLoadingException("Invalid section with retained data in map container: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the section into the destination and verifies its checksum
+     */
+    private void readSection(int id, byte[] destination) throws SettlersMapLoadingException {
+        if (lengths[id] != destination.length) {
+            throw new SettlersMapLoadingException("Section " + id + " has length " + lengths[id] + " but expected " + destination.length);
+        }
+
+        ByteBuffer data = source.duplicate();
+
+        data.position(offsets[id]);
+        data.limit(offsets[id] + storedLengths[id]);
+
+        if (compressions[id] == STORED) {
+            if (storedLengths[id] != lengths[id]) {
+                throw new SettlersMapLoadingException("Stored section " + id + " has the wrong length");
+            }
+
+            data.get(destination);
+        } else if (compressions[id] == DEFLATE) {
+            Inflater inflater = new Inflater();
+
+            try {
+                inflater.setInput(data);
+
+                int inflated = 0;
+
+                while (inflated < destination.length && !inflater.finished()) {
+                    int result = inflater.inflate(destination, inflated, destination.length - inflated);
+
+                    if (result == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+
+                    inflated = inflated + result;
+                }
+
+                if (inflated != destination.length || !inflater.finished()) {
+                    throw new SettlersMapLoadingException("Compressed section " + id + " is truncated");
+                }
+            } catch (DataFormatException e) {
+                throw new SettlersMapLoadingException("Compressed section " + id + " is corrupt: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        } else {
+            throw new SettlersMapLoadingException("Unknown compression " + compressions[id] + " for section " + id);
+        }
+
+        CRC32C crc = new CRC32C();
+
+        crc.update(destination, 0, destination.length);
+
+        if (crc.getValue() != checksums[id]) {
+            throw new SettlersMapLoadingException("Checksum mismatch in section " + id);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a map in the compact .smm container format. See MapContainerReader for a description of the format.
+ *
+ */
+public class MapContainerWriter {
+    private final boolean compress;
+
+    /**
+     * Creates a writer. If compression is selected each section is DEFLATE compressed, unless that doesn't make it
+     * smaller.
+     *
+     * @param compress
+     */
+    public MapContainerWriter(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Writes the map to the file, replacing it if it exists
+     *
+     * @param mapFile
+     * @param path
+     * @throws IOException
+     */
+    public void write(MapFile mapFile, Path path) throws IOException {
+        ByteBuffer[] buffers = toBuffers(mapFile);
+
+        try (FileChannel fileChannel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                fileChannel.write(buffers);
+            }
+        }
+    }
+
+    /**
+     * Returns the map in the container format
+     *
+     * @param mapFile
+     * @return
+     */
+    public ByteBuffer writeToBuffer(MapFile mapFile) {
+        ByteBuffer[] buffers = toBuffers(mapFile);
+
+        int size = 0;
+
+        for (ByteBuffer buffer : buffers) {
+            size = size + buffer.remaining();
+        }
+
+        ByteBuffer result = ByteBuffer.allocate(size);
+
+        for (ByteBuffer buffer : buffers) {
+            result.put(buffer);
+        }
+
+        result.flip();
+
+        return result;
+    }
+
+    /**
+     * Returns the header with the table of contents followed by the sections
+     */
+    private ByteBuffer[] toBuffers(MapFile mapFile) {
+        int numberOfPoints = mapFile.getNumberOfPoints();
+        int numberOfSections = 2 + MapPlane.values().length;
+
+        /* Encode the sections. The planes are compressed in parallel */
+        ByteBuffer metadata = ByteBuffer.allocate(MapMetadataCodec.sizeOf(mapFile)).order(ByteOrder.LITTLE_ENDIAN);
+
+        MapMetadataCodec.write(metadata, mapFile);
+
+        ByteBuffer retainedData = ByteBuffer.allocate(MapMetadataCodec.sizeOfRetainedData(mapFile)).order(ByteOrder.LITTLE_ENDIAN);
+
+        MapMetadataCodec.writeRetainedData(retainedData, mapFile);
+
+        List<ForkJoinTask<Section>> tasks = new ArrayList<>();
+
+        for (MapPlane plane : MapPlane.values()) {
+            byte[] data = mapFile.getPlane(plane);
+
+            tasks.add(ForkJoinPool.commonPool().submit(() -> encodeSection(data, numberOfPoints)));
+        }
+
+        Section[] sections = new Section[numberOfSections];
+
+        sections[0] = encodeSection(metadata.array(), metadata.position());
+
+        sections[numberOfSections - 1] = encodeSection(retainedData.array(), retainedData.position());
+
+        for (int i = 0; i < tasks.size(); i++) {
+            sections[i + 1] = tasks.get(i).join();
+        }
+
+        /* Write the header and the table of contents */
+        ByteBuffer header = ByteBuffer.allocate(MapContainerReader.HEADER_SIZE + numberOfSections * MapContainerReader.TOC_ENTRY_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MapContainerReader.MAGIC);
+        header.putInt(MapContainerReader.VERSION);
+        header.putInt(numberOfPoints);
+        header.putInt(numberOfSections);
+
+        long offset = header.capacity();
+
+        for (int i = 0; i < numberOfSections; i++) {
+            Section section = sections[i];
+
+            header.putInt(i);
+            header.putInt(section.compression);
+            header.putLong(offset);
+            header.putInt(section.data.remaining());
+            header.putInt(section.length);
+            header.putLong(section.checksum);
+
+            offset = offset + section.data.remaining();
+        }
+
+        header.flip();
+
+        ByteBuffer[] buffers = new ByteBuffer[numberOfSections + 1];
+
+        buffers[0] = header;
+
+        for (int i = 0; i < numberOfSections; i++) {
+            buffers[i + 1] = sections[i].data;
+        }
+
+        return buffers;
+    }
+
+    private Section encodeSection(byte[] data, int length) {
+        CRC32C crc = new CRC32C();
+
+        crc.update(data, 0, length);
+
+        if (compress) {
+            Deflater deflater = new Deflater();
+
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+
+                /* Store the section as is if compressing it doesn't make it smaller */
+                byte[] compressed = new byte[length];
+                int compressedLength = 0;
+
+                while (!deflater.finished() && compressedLength < compressed.length) {
+                    compressedLength = compressedLength + deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+                }
+
+                if (deflater.finished() && compressedLength < length) {
+                    return new Section(MapContainerReader.DEFLATE, ByteBuffer.wrap(compressed, 0, compressedLength), length, crc.getValue());
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        return new Section(MapContainerReader.STORED, ByteBuffer.wrap(Arrays.copyOf(data, length)), length, crc.getValue());
+    }
+
+    private static class Section {
+        private final int compression;
+        private final ByteBuffer data;
+        private final int length;
+        private final long checksum;
+
+        private Section(int compression, ByteBuffer data, int length, long checksum) {
+            this.compression = compression;
+            this.data = data;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+}
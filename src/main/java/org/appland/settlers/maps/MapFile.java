@@ -7,27 +7,48 @@ package org.appland.settlers.maps;
 
 import org.appland.settlers.model.Point;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
 
 import static org.appland.settlers.maps.Utils.isEven;
 
 /**
+ * The contents of a map file. The per-point data is kept in columnar form, with one primitive plane per type of
+ * value, and MapFilePoint instances are lightweight views into the planes.
+ *
+ * The planes are kept on the Java heap unless they are moved off the heap with moveOffHeap. Closing the map frees
+ * the memory of the planes right away, after which the points can't be used.
+ *
+ * The blocks that are not decoded into planes, and any bytes after the last block, are kept as read-only views of
+ * the data the map was loaded from, so the map can be written back unchanged.
+ *
+ * Points that are changed through their MapFilePoint are tracked with one bitset per plane, so an editor can update
+ * what it has derived from the map for the changed points only.
  *
  * @author johan
  */
-public class MapFile {
+public class MapFile implements AutoCloseable {
+
+    /* Returned instead of an index when a point has no neighbour in a direction, i.e. at the edge of the map */
+    public static final int NO_NEIGHBOUR = -1;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
 
     /* Map properties */
     private final List<Point> startingPositions;
     private final List<PlayerFace> playerFaces;
     private final List<UniqueMass> masses;
-    private final List<MapFilePoint> pointList;
+    private final AtomicReferenceArray<byte[]> planes;
     private final List<java.awt.Point> fileStartingPoints;
-    private final Map<Point, MapFilePoint> gamePointToMapFilePointMap;
-    private final Map<java.awt.Point, MapFilePoint> mapFilePointToGamePointMap;
+    private final BitSet[] dirtyPoints;
+    private final ByteBuffer[] retainedBlocks;
 
     int         width;
     int         height;
@@ -37,6 +58,16 @@ public class MapFile {
     boolean     unlimitedPlay;
     private     String title;
     private     MapTitleType mapTitleType;
+    private     int numberOfPoints;
+    private     BlockIndex blockIndex;
+    private     BlockHeader blockHeader;
+    private volatile int[] neighbours;
+    private     ByteBuffer[] offHeapPlanes;
+    private     boolean releasePlanesOnClose;
+    private     ByteBuffer offHeapRetainedData;
+    private     ByteBuffer trailingBytes;
+    private     ByteBuffer fileHeader;
+    private volatile boolean closed;
 
     public MapFile() {
         width                      = -1;
@@ -45,10 +76,11 @@ public class MapFile {
         startingPositions          = new ArrayList<>();
         playerFaces                = new ArrayList<>();
         masses                     = new ArrayList<>();
-        pointList                  = new ArrayList<>();
+        planes                     = new AtomicReferenceArray<>(MapPlane.values().length);
+        numberOfPoints             = 0;
         fileStartingPoints         = new ArrayList<>();
-        mapFilePointToGamePointMap = new HashMap<>();
-        gamePointToMapFilePointMap = new HashMap<>();
+        dirtyPoints                = new BitSet[MapPlane.values().length];
+        retainedBlocks             = new ByteBuffer[MapBlock.values().length];
     }
 
     void setTitle(String title) {
@@ -105,16 +137,644 @@ public class MapFile {
         return height;
     }
 
-    void addSpot(MapFilePoint spot) {
-        pointList.add(spot);
+    /**
+     * Allocates empty planes for the given number of points
+     *
+     * @param numberOfPoints
+     */
+    void allocatePlanes(int numberOfPoints) {
+        this.numberOfPoints = numberOfPoints;
+
+        for (MapPlane plane : MapPlane.values()) {
+            planes.set(plane.ordinal(), new byte[numberOfPoints]);
+        }
+
+        neighbours = null;
+    }
+
+    /**
+     * Makes the planes load lazily from the blocks in the index the first time they are used
+     *
+     * @param numberOfPoints
+     * @param blockIndex
+     */
+    void setBlockIndex(int numberOfPoints, BlockIndex blockIndex) {
+        this.numberOfPoints = numberOfPoints;
+        this.blockIndex = blockIndex;
+
+        neighbours = null;
+    }
+
+    /**
+     * Uses the buffers as the planes without copying them, e.g. views of a memory mapped file. The map is then off the
+     * heap, and the buffers are not freed when the map is closed. The buffers must be writable and in the order of
+     * MapPlane.
+     *
+     * @param numberOfPoints
+     * @param buffers
+     */
+    void setPlaneBuffers(int numberOfPoints, ByteBuffer[] buffers) {
+        this.numberOfPoints = numberOfPoints;
+
+        offHeapPlanes = buffers;
+        releasePlanesOnClose = false;
+        neighbours = null;
+    }
+
+    /**
+     * Returns the plane. If the planes are off the heap this is a copy, so no view of the memory outlives close().
+     *
+     * @param plane
+     * @return
+     */
+    byte[] getPlane(MapPlane plane) {
+        ByteBuffer[] buffers = offHeapPlanes;
+
+        if (buffers != null) {
+            byte[] copy = new byte[numberOfPoints];
+
+            buffers[plane.ordinal()].duplicate().get(copy);
+
+            return copy;
+        }
+
+        byte[] data = planes.get(plane.ordinal());
+
+        if (data == null) {
+            data = decodePlane(plane);
+        }
+
+        return data;
+    }
+
+    /**
+     * Returns true if the plane is decoded. This is always the case unless the map is loaded lazily
+     *
+     * @param plane
+     * @return
+     */
+    boolean isPlaneDecoded(MapPlane plane) {
+        return offHeapPlanes != null || planes.get(plane.ordinal()) != null;
+    }
+
+    private synchronized byte[] decodePlane(MapPlane plane) {
+        checkNotClosed();
+
+        byte[] data = planes.get(plane.ordinal());
+
+        /* Another thread may have decoded the plane while this thread waited */
+        if (data != null) {
+            return data;
+        }
+
+        data = new byte[numberOfPoints];
+
+        MapBlock block = MapBlock.fromPlane(plane);
+
+        if (blockIndex != null && blockIndex.contains(block)) {
+            blockIndex.copyBlock(block, data);
+        }
+
+        planes.set(plane.ordinal(), data);
+
+        return data;
+    }
+
+    int getNumberOfPoints() {
+        return numberOfPoints;
+    }
+
+    /**
+     * Returns a rough estimate of how much memory the map uses, on and off the heap. This is dominated by the points,
+     * which each have one byte per plane, and the indexes of their neighbours once those are used. The game points
+     * are calculated from the index so they take no memory.
+     *
+     * @return
+     */
+    long estimateSizeInBytes() {
+
+        /* Planes and the neighbours */
+        long bytesPerPoint = MapPlane.values().length + (neighbours == null ? 0 : 4 * DIRECTIONS.length);
+
+        /* The retained blocks are only counted if they are on the heap, and not e.g. a memory mapped file */
+        long retainedBytes = 0;
+
+        for (ByteBuffer data : retainedBlocks) {
+            if (data != null && !data.isDirect()) {
+                retainedBytes = retainedBytes + data.capacity();
+            }
+        }
+
+        return numberOfPoints * bytesPerPoint + retainedBytes;
+    }
+
+    /**
+     * Returns a read-only view of the plane without copying it, also when the plane is kept off the heap. Unlike
+     * getPlane, the view must not be used after the map is closed, so it's only for use within this package, e.g. to
+     * write the map.
+     *
+     * @param plane
+     * @return
+     */
+    ByteBuffer getPlaneBuffer(MapPlane plane) {
+        checkNotClosed();
+
+        ByteBuffer[] buffers = offHeapPlanes;
+
+        if (buffers != null) {
+            return buffers[plane.ordinal()].asReadOnlyBuffer();
+        }
+
+        return ByteBuffer.wrap(getPlane(plane)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a read-only view of the gouraud shading of each point, in the order the points are stored, so it can be
+     * used for rendering as is. 64 is flat ground. If the planes are off the heap this is a copy, so no view of the
+     * memory outlives close().
+     *
+     * @return
+     */
+    public ByteBuffer getShading() {
+        checkNotClosed();
+
+        if (offHeapPlanes != null) {
+            return ByteBuffer.wrap(getPlane(MapPlane.SHADING)).asReadOnlyBuffer();
+        }
+
+        return getPlaneBuffer(MapPlane.SHADING);
+    }
+
+    /**
+     * Calculates the shading of each point from the heights, replacing the shading from the file. This is for maps
+     * where the shading block is missing or no longer matches the heights, e.g. after the heights are edited. See
+     * Shading for how it's calculated.
+     *
+     * This must not be called while other threads use the map.
+     */
+    public void recomputeShading() {
+        byte[] heights = getPlane(MapPlane.HEIGHTS);
+        int[] firstX = new int[width > 0 ? numberOfPoints / width : 0];
+
+        for (int row = 0; row < firstX.length; row++) {
+            firstX[row] = getGamePointX(row * width);
+        }
+
+        ByteBuffer[] buffers = offHeapPlanes;
+
+        if (buffers != null) {
+            byte[] shading = new byte[numberOfPoints];
+
+            Shading.calculate(heights, shading, width, firstX);
+
+            buffers[MapPlane.SHADING.ordinal()].duplicate().put(shading);
+        } else {
+            Shading.calculate(heights, getPlane(MapPlane.SHADING), width, firstX);
+        }
+    }
+
+    int getUint8(MapPlane plane, int index) {
+        ByteBuffer[] buffers = offHeapPlanes;
+
+        if (buffers != null) {
+            return buffers[plane.ordinal()].get(index) & 0xff;
+        }
+
+        return getPlane(plane)[index] & 0xff;
+    }
+
+    void setUint8(MapPlane plane, int index, int value) {
+        ByteBuffer[] buffers = offHeapPlanes;
+        byte previous;
+
+        if (buffers != null) {
+            previous = buffers[plane.ordinal()].get(index);
+
+            buffers[plane.ordinal()].put(index, (byte) value);
+        } else {
+            byte[] data = getPlane(plane);
+
+            previous = data[index];
+
+            data[index] = (byte) value;
+        }
+
+        /* Writing the value a point already has doesn't make it dirty */
+        if (previous != (byte) value) {
+            markDirty(plane, index);
+        }
+    }
+
+    private void markDirty(MapPlane plane, int index) {
+        BitSet dirty = dirtyPoints[plane.ordinal()];
+
+        if (dirty == null) {
+            dirty = new BitSet(numberOfPoints);
+
+            dirtyPoints[plane.ordinal()] = dirty;
+        }
+
+        dirty.set(index);
+    }
+
+    /**
+     * Returns the indexes of the points whose value in the plane has changed since the dirty points were last
+     * cleared. The returned bitset is a copy.
+     *
+     * Changes are tracked for edits made from one thread at a time, e.g. by an editor.
+     *
+     * @param plane
+     * @return
+     */
+    BitSet getDirtyPoints(MapPlane plane) {
+        BitSet dirty = dirtyPoints[plane.ordinal()];
+
+        return dirty == null ? new BitSet() : (BitSet) dirty.clone();
+    }
+
+    /**
+     * Returns the indexes of the points that have changed in any plane since the dirty points were last cleared
+     *
+     * @return
+     */
+    BitSet getDirtyPoints() {
+        BitSet dirty = new BitSet();
+
+        for (BitSet dirtyInPlane : dirtyPoints) {
+            if (dirtyInPlane != null) {
+                dirty.or(dirtyInPlane);
+            }
+        }
+
+        return dirty;
+    }
+
+    boolean hasDirtyPoints() {
+        for (BitSet dirtyInPlane : dirtyPoints) {
+            if (dirtyInPlane != null && !dirtyInPlane.isEmpty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    void clearDirtyPoints() {
+        for (BitSet dirtyInPlane : dirtyPoints) {
+            if (dirtyInPlane != null) {
+                dirtyInPlane.clear();
+            }
+        }
+    }
+
+    /**
+     * Moves the planes to memory outside of the Java heap, so large maps that are kept around don't add to the work of
+     * the garbage collector. Planes that are loaded lazily are decoded first. The points are read and written the
+     * same way as before.
+     *
+     * This must not be called while other threads use the map.
+     */
+    public synchronized void moveOffHeap() {
+        checkNotClosed();
+
+        if (offHeapPlanes != null) {
+            return;
+        }
+
+        ByteBuffer[] buffers = new ByteBuffer[MapPlane.values().length];
+
+        for (MapPlane plane : MapPlane.values()) {
+            ByteBuffer buffer = DirectMemory.allocate(numberOfPoints);
+
+            buffer.put(getPlane(plane));
+            buffer.flip();
+
+            buffers[plane.ordinal()] = buffer;
+        }
+
+        offHeapPlanes = buffers;
+        releasePlanesOnClose = true;
+
+        moveRetainedDataOffHeap();
+
+        /* The planes on the heap and the file they were decoded from are no longer needed */
+        for (MapPlane plane : MapPlane.values()) {
+            planes.set(plane.ordinal(), null);
+        }
+
+        blockIndex = null;
+    }
+
+    /**
+     * Copies the retained blocks and trailing bytes that are on the heap into one buffer off the heap. Views of e.g. a
+     * memory mapped file are already off the heap and are kept as they are.
+     */
+    private void moveRetainedDataOffHeap() {
+        int size = 0;
+
+        for (ByteBuffer data : retainedBlocks) {
+            if (data != null && !data.isDirect()) {
+                size = size + data.remaining();
+            }
+        }
+
+        if (trailingBytes != null && !trailingBytes.isDirect()) {
+            size = size + trailingBytes.remaining();
+        }
+
+        if (size == 0) {
+            return;
+        }
+
+        ByteBuffer offHeapData = DirectMemory.allocate(size);
+
+        for (int i = 0; i < retainedBlocks.length; i++) {
+            if (retainedBlocks[i] != null && !retainedBlocks[i].isDirect()) {
+                retainedBlocks[i] = copyTo(offHeapData, retainedBlocks[i]);
+            }
+        }
+
+        if (trailingBytes != null && !trailingBytes.isDirect()) {
+            trailingBytes = copyTo(offHeapData, trailingBytes);
+        }
+
+        offHeapRetainedData = offHeapData;
+    }
+
+    private static ByteBuffer copyTo(ByteBuffer destination, ByteBuffer data) {
+        int start = destination.position();
+
+        destination.put(data.duplicate());
+
+        ByteBuffer copy = destination.duplicate();
+
+        copy.position(start);
+        copy.limit(destination.position());
+
+        return copy.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns true if the planes are kept outside of the Java heap
+     *
+     * @return
+     */
+    public boolean isOffHeap() {
+        return offHeapPlanes != null;
+    }
+
+    /**
+     * Frees the planes. Memory outside of the heap is freed right away instead of when the map is garbage collected.
+     * The map can't be used after it's closed, and it must not be closed while other threads use it.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        ByteBuffer[] buffers = offHeapPlanes;
+        ByteBuffer retainedData = offHeapRetainedData;
+
+        offHeapPlanes = null;
+        offHeapRetainedData = null;
+        blockIndex = null;
+        trailingBytes = null;
+        fileHeader = null;
+
+        Arrays.fill(retainedBlocks, null);
+
+        for (MapPlane plane : MapPlane.values()) {
+            planes.set(plane.ordinal(), null);
+        }
+
+        if (buffers != null && releasePlanesOnClose) {
+            for (ByteBuffer buffer : buffers) {
+                DirectMemory.release(buffer);
+            }
+        }
+
+        if (retainedData != null) {
+            DirectMemory.release(retainedData);
+        }
+    }
+
+    /**
+     * Returns the game point of the point as a new Point. Prefer getGamePointX and getGamePointY where no Point is
+     * needed.
+     *
+     * @param index
+     * @return
+     */
+    Point getGamePointPosition(int index) {
+        return new Point(getGamePointX(index), getGamePointY(index));
+    }
+
+    /**
+     * Returns the x coordinate of the game point of the point, calculated from its index following the pattern
+     * described in mapFilePointsToGamePoints
+     *
+     * @param index
+     * @return
+     */
+    int getGamePointX(int index) {
+        int row = index / width;
+
+        return firstGamePointXOfRow(row) + (index - row * width) * 2;
+    }
+
+    /**
+     * Returns the y coordinate of the game point of the point, calculated from its index following the pattern
+     * described in mapFilePointsToGamePoints
+     *
+     * @param index
+     * @return
+     */
+    int getGamePointY(int index) {
+        return topGamePointY() - index / width;
+    }
+
+    /**
+     * The first row starts at x = 0 if the height is even, otherwise at 1. The other rows start at 0 when y is even
+     */
+    private int firstGamePointXOfRow(int row) {
+        if (row == 0) {
+            return isEven(height) ? 0 : 1;
+        }
+
+        return isEven(topGamePointY() - row) ? 0 : 1;
+    }
+
+    private int topGamePointY() {
+        return isEven(height) ? height : height - 1;
+    }
+
+    void setStartingPoints(List<Point> startingPoints) {
+        startingPositions.clear();
+
+        startingPositions.addAll(startingPoints);
     }
 
     void addMassStartingPoint(java.awt.Point position) {
         // Ignore for now
     }
 
+    void setMasses(List<UniqueMass> masses) {
+        this.masses.clear();
+
+        this.masses.addAll(masses);
+    }
+
+    /**
+     * Returns the table of water and land masses from the file header, including the unused entries
+     *
+     * @return
+     */
+    List<UniqueMass> getMasses() {
+        return masses;
+    }
+
+    void setBlockHeader(BlockHeader blockHeader) {
+        this.blockHeader = blockHeader;
+    }
+
+    /* The retained data is kept as it's given, without copying it, so it may be a view of a memory mapped file */
+    void retainBlock(MapBlock block, ByteBuffer data) {
+        retainedBlocks[block.ordinal()] = data;
+    }
+
+    /**
+     * Returns a read-only view of a block that is not decoded into a plane, e.g. the roads or the passable areas, or
+     * null if the block was not loaded with the map. If the block is kept off the heap this is a copy, so no view of
+     * the memory outlives close().
+     *
+     * If the map was loaded with MapLoader.loadMapFromPath the view is of the mapped file, which must not be changed
+     * or truncated while the map is in use.
+     *
+     * @param block
+     * @return
+     */
+    public ByteBuffer getRetainedBlock(MapBlock block) {
+        return copyIfOffHeap(getRetainedBlockView(block));
+    }
+
+    /**
+     * Returns a read-only view of the retained block without copying it. Like getPlaneBuffer, the view must not be
+     * used after the map is closed.
+     *
+     * @param block
+     * @return
+     */
+    ByteBuffer getRetainedBlockView(MapBlock block) {
+        checkNotClosed();
+
+        ByteBuffer data = retainedBlocks[block.ordinal()];
+
+        return data == null ? null : data.duplicate();
+    }
+
+    void setFileHeader(ByteBuffer fileHeader) {
+        this.fileHeader = fileHeader;
+    }
+
+    /**
+     * Returns a read-only view of the file header as it was loaded, or null if the map was not loaded from a map file.
+     * MapWriter writes it back and only changes the fields that differ from the map. Like getPlaneBuffer, the view
+     * must not be used after the map is closed.
+     *
+     * @return
+     */
+    ByteBuffer getFileHeaderView() {
+        checkNotClosed();
+
+        return fileHeader == null ? null : fileHeader.duplicate();
+    }
+
+    void setTrailingBytes(ByteBuffer trailingBytes) {
+        this.trailingBytes = trailingBytes;
+    }
+
+    /**
+     * Returns a read-only view of the bytes after the last block, normally only the footer, or null if they were not
+     * loaded with the map. If the bytes are kept off the heap this is a copy, so no view of the memory outlives
+     * close().
+     *
+     * If the map was loaded with MapLoader.loadMapFromPath the view is of the mapped file, which must not be changed
+     * or truncated while the map is in use.
+     *
+     * @return
+     */
+    public ByteBuffer getTrailingBytes() {
+        return copyIfOffHeap(getTrailingBytesView());
+    }
+
+    /**
+     * Returns a read-only view of the trailing bytes without copying them. Like getPlaneBuffer, the view must not be
+     * used after the map is closed.
+     *
+     * @return
+     */
+    ByteBuffer getTrailingBytesView() {
+        checkNotClosed();
+
+        return trailingBytes == null ? null : trailingBytes.duplicate();
+    }
+
+    /**
+     * Copies data that may be in memory that close() frees to the heap
+     */
+    private ByteBuffer copyIfOffHeap(ByteBuffer data) {
+        if (data == null || offHeapRetainedData == null || !data.isDirect()) {
+            return data;
+        }
+
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+
+        copy.put(data);
+        copy.flip();
+
+        return copy.asReadOnlyBuffer();
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("The map is closed");
+        }
+    }
+
+    /**
+     * Returns the header that all blocks in the file had, or null if the map was not loaded from a map file
+     *
+     * @return
+     */
+    BlockHeader getBlockHeader() {
+        return blockHeader;
+    }
+
     Iterable<MapFilePoint> getMapFilePoints() {
-        return pointList;
+        return () -> new Iterator<>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < numberOfPoints;
+            }
+
+            @Override
+            public MapFilePoint next() {
+                if (index >= numberOfPoints) {
+                    throw new NoSuchElementException();
+                }
+
+                MapFilePoint mapFilePoint = new MapFilePoint(MapFile.this, index);
+
+                index = index + 1;
+
+                return mapFilePoint;
+            }
+        };
     }
 
     public List<Point> getStartingPoints() {
@@ -142,7 +802,11 @@ public class MapFile {
     }
 
     public MapFilePoint getSpot(int i) {
-        return pointList.get(i);
+        if (i < 0 || i >= numberOfPoints) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for " + numberOfPoints + " points");
+        }
+
+        return new MapFilePoint(this, i);
     }
 
     /**
@@ -169,91 +833,196 @@ public class MapFile {
      *      - If height is even - no cropping is needed
      *      - If height is odd - need to crop last row. height_in_game = height_in_file - 1
      *
+     * The pattern is fixed, so the game point of each point is calculated from its index by getGamePointX and
+     * getGamePointY, and indexOf and getMapFilePoint find the point for a game point by calculating its index. This
+     * only has to be called again if the dimensions of the map change.
+     *
      */
     public void mapFilePointsToGamePoints() {
-        int rowLength = width;
 
-        /* Set initial values */
-        int indexWithinRow = 1;
-        int mapFileY = 1; // FIXME: are mapfile coordinates starting at 1 or 0?
-        int mapFileX = 1;
+        /* The game points are calculated from the index when they are used, so only the neighbours depend on them */
+        neighbours = null;
+    }
+
+    /**
+     * Calculates the game point for the given map file position without going through the points, following the same
+     * pattern as mapFilePointsToGamePoints. Returns null if the position is outside the map.
+     *
+     * @param width
+     * @param height
+     * @param mapFilePosition
+     * @return
+     */
+    static Point mapFilePositionToGamePoint(int width, int height, java.awt.Point mapFilePosition) {
+        if (mapFilePosition.x < 1 || mapFilePosition.x > width || mapFilePosition.y < 1 || mapFilePosition.y > height) {
+            return null;
+        }
+
+        int row = mapFilePosition.y - 1;
+        int gamePointY = (isEven(height) ? height : height - 1) - row;
         int gamePointX;
-        int gamePointY;
 
-        /* Start game point x at 0 if height is even, otherwise 1 */
-        if (isEven(height)) {
-            gamePointY = height;
-            gamePointX = 0;
+        /* The first row starts at x = 0 if the height is even, otherwise at 1. The other rows start at 0 when y is even */
+        if (row == 0) {
+            gamePointX = isEven(height) ? 0 : 1;
         } else {
-            gamePointY = height - 1;
-            gamePointX = 1;
+            gamePointX = isEven(gamePointY) ? 0 : 1;
         }
 
-        /* Go through each map file point and calculate its coordinates in mapfile coordinates and game points */
-        for (MapFilePoint mapFilePoint : pointList) {
+        gamePointX = gamePointX + (mapFilePosition.x - 1) * 2;
 
-            /* Store mapping from game point and map file coordinates to the map file point */
-            Point gamePoint = new Point(gamePointX, gamePointY);
-            java.awt.Point mapFilePosition = new java.awt.Point(mapFileX, mapFileY);
+        return new Point(gamePointX, gamePointY);
+    }
 
-            gamePointToMapFilePointMap.put(gamePoint, mapFilePoint);
-            mapFilePointToGamePointMap.put(mapFilePosition, mapFilePoint);
+    /**
+     * Returns the index of the point at the given game point, or -1 if there is no such point in the map. This is the
+     * inverse of mapFilePointsToGamePoints.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public int indexOf(int x, int y) {
+        int row = topGamePointY() - y;
 
-            mapFilePoint.setPositionAsGamePoint(gamePoint);
+        if (row < 0 || row >= height) {
+            return -1;
+        }
 
-            /* Go to next row if the current row is done */
-            if (indexWithinRow == rowLength) {
-                indexWithinRow = 1;
+        int offset = x - firstGamePointXOfRow(row);
 
-                mapFileY = mapFileY + 1;
-                gamePointY = gamePointY - 1;
+        if (offset < 0 || !isEven(offset) || offset / 2 >= width) {
+            return -1;
+        }
 
-                mapFileX = 1;
+        int index = row * width + offset / 2;
 
-                if (isEven(gamePointY)) {
-                    gamePointX = 0;
-                } else {
-                    gamePointX = 1;
-                }
+        return index < numberOfPoints ? index : -1;
+    }
+
+    /**
+     * Returns the index of the neighbour of the point in the given direction, or NO_NEIGHBOUR if the point is at the
+     * edge of the map. The neighbours of all points are calculated the first time this is used.
+     *
+     * @param index
+     * @param direction
+     * @return
+     */
+    public int getNeighbour(int index, Direction direction) {
+        return getNeighbours()[index * DIRECTIONS.length + direction.ordinal()];
+    }
+
+    /**
+     * Calls the consumer with the index of each point, in the order they are stored in the map file
+     *
+     * @param consumer
+     */
+    public void forEachIndex(IntConsumer consumer) {
+        for (int index = 0; index < numberOfPoints; index++) {
+            consumer.accept(index);
+        }
+    }
 
-            /* Go to next place in the row */
-            } else {
-                indexWithinRow = indexWithinRow + 1;
+    /**
+     * Calls the consumer with the index of each neighbour of the point, in the order of Direction. Directions without
+     * a neighbour are skipped.
+     *
+     * @param index
+     * @param consumer
+     */
+    public void forEachNeighbour(int index, IntConsumer consumer) {
+        int[] table = getNeighbours();
+        int first = index * DIRECTIONS.length;
 
-                mapFileX = mapFileX + 1;
-                gamePointX = gamePointX + 2;
+        for (int i = first; i < first + DIRECTIONS.length; i++) {
+            if (table[i] != NO_NEIGHBOUR) {
+                consumer.accept(table[i]);
             }
         }
     }
 
+    /**
+     * Returns the table of neighbours, with the index of the neighbour in each direction for each point. It's
+     * calculated when it's first needed, and again if the game points change.
+     */
+    private int[] getNeighbours() {
+        int[] table = neighbours;
+
+        if (table == null) {
+            table = new int[numberOfPoints * DIRECTIONS.length];
+
+            for (int index = 0; index < numberOfPoints; index++) {
+                int x = getGamePointX(index);
+                int y = getGamePointY(index);
+
+                for (Direction direction : DIRECTIONS) {
+                    table[index * DIRECTIONS.length + direction.ordinal()] =
+                            indexOf(x + direction.getDx(), y + direction.getDy());
+                }
+            }
+
+            neighbours = table;
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns the index of the point at the given position in the map file, where both coordinates start at 1, or -1
+     * if the position is outside the map
+     */
+    private int indexOfMapFilePosition(java.awt.Point mapFilePosition) {
+        if (mapFilePosition.x < 1 || mapFilePosition.x > width || mapFilePosition.y < 1 || mapFilePosition.y > height) {
+            return -1;
+        }
+
+        int index = (mapFilePosition.y - 1) * width + mapFilePosition.x - 1;
+
+        return index < numberOfPoints ? index : -1;
+    }
+
+    List<java.awt.Point> getFileStartingPoints() {
+        return fileStartingPoints;
+    }
+
+    MapTitleType getMapTitleType() {
+        return mapTitleType;
+    }
+
     void translateFileStartingPointsToGamePoints() throws InvalidMapException {
 
         for (java.awt.Point point : fileStartingPoints) {
 
             /* Filter invalid starting points - this can exist e.g. on mission maps */
-            if (!mapFilePointToGamePointMap.containsKey(point)) {
+            int index = indexOfMapFilePosition(point);
+
+            if (index == -1) {
                 continue;
             }
 
-            if (point == null || mapFilePointToGamePointMap == null || mapFilePointToGamePointMap.get(point) == null) {
-                System.out.println(point);
-                System.out.println(startingPositions);
-                System.out.println(mapFilePointToGamePointMap);
-                System.out.println(mapFilePointToGamePointMap.get(point));
-            }
+            startingPositions.add(new org.appland.settlers.model.Point(getGamePointPosition(index)));
+        }
+    }
 
-            MapFilePoint spot = mapFilePointToGamePointMap.get(point);
+    public MapFilePoint getMapFilePoint(Point point) {
+        return getMapFilePoint(point.x, point.y);
+    }
 
-            if (spot == null) {
-                throw new InvalidMapException("The starting point " + point + " is outside of the map.");
-            }
+    /**
+     * Returns the point at the given game point, or null if it's outside the map
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public MapFilePoint getMapFilePoint(int x, int y) {
+        int index = indexOf(x, y);
 
-            startingPositions.add(new org.appland.settlers.model.Point(spot.getGamePointPosition()));
+        if (index == -1) {
+            return null;
         }
-    }
 
-    public MapFilePoint getMapFilePoint(Point point) {
-        return gamePointToMapFilePointMap.get(point);
+        return new MapFilePoint(this, index);
     }
 
     public void setTitleType(MapTitleType titleType) {
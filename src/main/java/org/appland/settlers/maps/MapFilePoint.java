@@ -11,9 +11,9 @@ import org.appland.settlers.model.Size;
 import org.appland.settlers.model.Tree.TreeType;
 import org.appland.settlers.model.TreeSize;
 
-import static org.appland.settlers.maps.Translator.DEFAULT_OBJECT_PROPERTY_TO_DECORATION_MAP;
-
 /**
+ * A view of a single point in a MapFile. The point doesn't hold any data of its own, it reads and writes the planes
+ * of the MapFile at its index.
  *
  * @author johan
  */
@@ -30,138 +30,127 @@ class MapFilePoint {
     private static final int DECORATIVE_OBJECT_TYPE = 0x02;
     private static final int GRANITE_OBJECT_TYPE = 0x03;
     private static final int NONE_OBJECT_TYPE = 0x00;
+    private static final int NO_OBJECT = -1;
+    private static final int HARBOR_MASK = 0x40;
+    private static final int TEXTURE_FLAGS_MASK = 0xC0;
+
+    private final MapFile mapFile;
+    private final int index;
+
+    MapFilePoint(MapFile mapFile, int index) {
+        this.mapFile = mapFile;
+        this.index = index;
+    }
 
-    private int height;
-    private Texture textureDown;
-    private Texture textureDownRight;
-    private short objectProperties;
-    private short objectType;
-    private Animal animal;
-    private BuildableSite buildableSite;
-    private Resource resource;
-    private Point gamePointPosition;
-    private boolean isPossibleHarbor;
-    private TreeType treeType;
-    private TreeSize treeSize;
-    private DecorationType decorativeObject;
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the neighbouring point in the given direction, or null at the edge of the map
+     *
+     * @param direction
+     * @return
+     */
+    MapFilePoint getNeighbour(Direction direction) {
+        int neighbour = mapFile.getNeighbour(index, direction);
+
+        if (neighbour == MapFile.NO_NEIGHBOUR) {
+            return null;
+        }
 
-    public MapFilePoint() {
-        isPossibleHarbor = false;
+        return new MapFilePoint(mapFile, neighbour);
     }
 
     void setHeight(int heightAtPoint) {
-        height = heightAtPoint;
+        mapFile.setUint8(MapPlane.HEIGHTS, index, heightAtPoint);
     }
 
     void setVegetationBelow(Texture texture) {
-        textureDown = texture;
+        int flags = mapFile.getUint8(MapPlane.TEXTURE_BELOW, index) & TEXTURE_FLAGS_MASK;
+
+        mapFile.setUint8(MapPlane.TEXTURE_BELOW, index, flags | texture.getValue());
     }
 
     Texture getVegetationBelow() {
-        return textureDown;
+        return Texture.textureFromUint8(mapFile.getUint8(MapPlane.TEXTURE_BELOW, index));
     }
 
     void setVegetationDownRight(Texture texture) {
-        textureDownRight = texture;
+        mapFile.setUint8(MapPlane.TEXTURE_DOWN_RIGHT, index, texture.getValue());
     }
 
     Texture getVegetationDownRight() {
-        return textureDownRight;
+        return Texture.textureFromUint8(mapFile.getUint8(MapPlane.TEXTURE_DOWN_RIGHT, index));
     }
 
     void setObjectProperties(short unsignedByteInArray) {
-        objectProperties = unsignedByteInArray;
+        mapFile.setUint8(MapPlane.OBJECT_PROPERTIES, index, unsignedByteInArray);
     }
 
     void setObjectType(short objectType) {
+        mapFile.setUint8(MapPlane.OBJECT_TYPE, index, objectType);
+    }
 
-        // Store the object type
-        this.objectType = objectType;
+    private short getObjectProperties() {
+        return (short) mapFile.getUint8(MapPlane.OBJECT_PROPERTIES, index);
+    }
+
+    private short getObjectType() {
+        return (short) mapFile.getUint8(MapPlane.OBJECT_TYPE, index);
+    }
+
+    /**
+     * Interprets the object type and returns the type of object that exists at the point, or NO_OBJECT if there is
+     * no object or if it's burnt or time limited
+     */
+    private int getExistingObjectType() {
+        short objectType = getObjectType();
 
         // Interpret the object type
-        int variant = objectType & 0x03;
         int type = (objectType >> 2) & 0x03;
         int info = objectType >> 4;
 
         // Read the info block
-        boolean isTimeLimited = false;
-        boolean isBurntBuilding = false;
-        boolean isTerrainObject = false;
-        boolean objectExists = false;
+        boolean isTimeLimited = (info & TIME_LIMITED_MASK) > 0;
+        boolean isBurntBuilding = (info & BURNT_BUILDING_MASK) > 0;
+        boolean objectExists = (info & OBJECT_EXISTS_MASK) > 0;
 
-        if ((info & TIME_LIMITED_MASK) > 0) {
-            isTimeLimited = true;
+        // Only manage objects that are not burnt or time limited
+        if (isTimeLimited || isBurntBuilding || !objectExists) {
+            return NO_OBJECT;
         }
 
-        if ((info & BURNT_BUILDING_MASK) > 0) {
-            isBurntBuilding = true;
-        }
-
-        if ((info & TERRAIN_OBJECT_MASK) > 0) {
-            isTerrainObject = true;
-        }
-
-        if ((info & OBJECT_EXISTS_MASK) > 0) {
-            objectExists = true;
-        }
-
-        // Manage objects that are not burnt or time limited
-        if (!isTimeLimited && !isBurntBuilding && objectExists) {
-
-            switch (type) {
-                case TREE_OBJECT_TYPE:
-                    int id = (variant << 2) & (objectProperties >> 6);
-                    int isCut = (objectProperties >> 3) & 0x01;
-                    int size = (objectProperties >> 4) & 0x03;
-                    int step = objectProperties & 0x07;
-
-                    TreeType treeType = TreeTranslator.DEFAULT_ID_TO_TREE_TYPE_MAP.get(id);
-                    TreeSize treeSize = TreeTranslator.TREE_SIZE_MAP.get(size);
-
-                    // TODO: consider the terrain type and pick tree types accordingly (only greenland for now)
-
-                    if (treeType == null) {
-                        throw new RuntimeException("Can't handle this tree type yet: " + id);
-                    }
-
-                    if (treeSize == null) {
-                        throw new RuntimeException("Can't handle tree size: " + size);
-                    }
-
-                    this.treeType = treeType;
-                    this.treeSize = treeSize;
-
-                    // TODO: consider isCut
-
-                    break;
-                case DECORATIVE_OBJECT_TYPE:
-
-                    this.decorativeObject = DEFAULT_OBJECT_PROPERTY_TO_DECORATION_MAP.get((int)objectProperties);
-
-                    break;
-                case GRANITE_OBJECT_TYPE:
-                    break;
-                case NONE_OBJECT_TYPE:
-                    break;
-                default:
-                    throw new RuntimeException("Unknown object type value: " + type);
-            }
+        switch (type) {
+            case TREE_OBJECT_TYPE:
+            case DECORATIVE_OBJECT_TYPE:
+            case GRANITE_OBJECT_TYPE:
+            case NONE_OBJECT_TYPE:
+                return type;
+            default:
+                throw new RuntimeException("Unknown object type value: " + type);
         }
     }
 
     void setAnimal(Animal animal) {
-        this.animal = animal;
+        mapFile.setUint8(MapPlane.ANIMALS, index, animal == null ? Animal.NO_ANIMAL.getValue() : animal.getValue());
     }
 
     void setBuildableSite(BuildableSite site) {
-        buildableSite = site;
+        mapFile.setUint8(MapPlane.BUILDABLE, index, site == null ? 0 : site.getValue());
     }
 
     void setResource(Resource resource) {
-        this.resource = resource;
+        mapFile.setUint8(MapPlane.RESOURCES, index, resource == null ? 0 : resource.getValue());
+    }
+
+    private Resource getResource() {
+        return Resource.resourceFromInt(mapFile.getUint8(MapPlane.RESOURCES, index));
     }
 
     boolean hasMineral() {
+        Resource resource = getResource();
+
         return resource != null && resource.type != null &&
                (resource.type == ResourceType.COAL     ||
                 resource.type == ResourceType.GOLD     ||
@@ -171,7 +160,7 @@ class MapFilePoint {
     }
 
     ResourceType getMineralType() {
-        return resource.type;
+        return getResource().type;
     }
 
     Size getMineralQuantity() {
@@ -182,6 +171,8 @@ class MapFilePoint {
         *
         * */
 
+        Resource resource = getResource();
+
         if (resource.amount > 4) {
             return Size.LARGE;
         } else if (resource.amount > 2) {
@@ -192,6 +183,8 @@ class MapFilePoint {
     }
 
     boolean hasStone() {
+        short objectType = getObjectType();
+
         if (objectType == 0xCC || objectType == 0xCD) {
             return true;
         }
@@ -200,6 +193,8 @@ class MapFilePoint {
     }
 
     StoneType getStoneType() {
+        short objectType = getObjectType();
+
         if (objectType == 0xCC) {
             return StoneType.STONE_1;
         } else if (objectType == 0xCD) {
@@ -210,58 +205,110 @@ class MapFilePoint {
     }
 
     int getStoneAmount() {
-        return objectProperties;
+        return getObjectProperties();
     }
 
     boolean hasTree() {
-        return treeType != null;
+        return getTreeType() != null;
     }
 
     boolean isNatureDecoration() {
-        return this.decorativeObject != null;
+        return getNatureDecorationType() != null;
     }
 
     boolean isNatureDecorationOld() {
+        short objectType = getObjectType();
+
         return objectType == NATURE_DECORATION_1 || objectType == NATURE_DECORATION_2;
     }
 
     DecorationType getNatureDecorationType() {
-        return decorativeObject;
+        if (getExistingObjectType() != DECORATIVE_OBJECT_TYPE) {
+            return null;
+        }
+
+        return Translator.decorations()[getObjectProperties() & 0xFF];
     }
 
     TreeType getTreeType() {
+        if (getExistingObjectType() != TREE_OBJECT_TYPE) {
+            return null;
+        }
+
+        short objectProperties = getObjectProperties();
+
+        int variant = getObjectType() & 0x03;
+        int id = (variant << 2) & (objectProperties >> 6);
+        int isCut = (objectProperties >> 3) & 0x01;
+        int size = (objectProperties >> 4) & 0x03;
+        int step = objectProperties & 0x07;
+
+        TreeType treeType = TreeTranslator.treeTypes()[id];
+        TreeSize treeSize = TreeTranslator.treeSizes()[size];
+
+        if (treeType == null) {
+            throw new RuntimeException("Can't handle this tree type yet: " + id);
+        }
+
+        if (treeSize == null) {
+            throw new RuntimeException("Can't handle tree size: " + size);
+        }
+
+        // TODO: consider isCut
+
         return treeType;
     }
 
     public boolean hasWildAnimal() {
-        return animal != null;
+        return Animal.animalFromInt((short) mapFile.getUint8(MapPlane.ANIMALS, index)).isWildAnimal();
     }
 
+    /**
+     * The game point of a point follows from its place in the map file, so it can't be moved. This only checks that
+     * the given game point is the one the point already has.
+     *
+     * @param gamePoint
+     */
     public void setPositionAsGamePoint(Point gamePoint) {
-        gamePointPosition = gamePoint;
+        if (gamePoint.x != mapFile.getGamePointX(index) || gamePoint.y != mapFile.getGamePointY(index)) {
+            throw new IllegalArgumentException("Point " + index + " is at " + getGamePointPosition() + ", not at " + gamePoint);
+        }
     }
 
     public org.appland.settlers.model.Point getGamePointPosition() {
-        return gamePointPosition;
+        return mapFile.getGamePointPosition(index);
     }
 
     public BuildableSite getBuildableSite() {
-        return buildableSite;
+        return BuildableSite.buildableSiteFromInt((short) mapFile.getUint8(MapPlane.BUILDABLE, index));
     }
 
     public int getHeight() {
-        return height;
+        return mapFile.getUint8(MapPlane.HEIGHTS, index);
+    }
+
+    /**
+     * Returns the gouraud shading of the point, where 64 is flat ground
+     *
+     * @return
+     */
+    public int getShading() {
+        return mapFile.getUint8(MapPlane.SHADING, index);
     }
 
     public boolean hasDeadTree() {
-        return (objectType == NATURE_DECORATION_1 || objectType == NATURE_DECORATION_2) && objectProperties == DEAD_TREE;
+        short objectType = getObjectType();
+
+        return (objectType == NATURE_DECORATION_1 || objectType == NATURE_DECORATION_2) && getObjectProperties() == DEAD_TREE;
     }
 
     public boolean isPossiblePlaceForHarbor() {
-        return isPossibleHarbor;
+        return (mapFile.getUint8(MapPlane.TEXTURE_BELOW, index) & HARBOR_MASK) != 0;
     }
 
     public void setPossibleHarbor() {
-        isPossibleHarbor = true;
+        int texture = mapFile.getUint8(MapPlane.TEXTURE_BELOW, index);
+
+        mapFile.setUint8(MapPlane.TEXTURE_BELOW, index, texture | HARBOR_MASK);
     }
 }
@@ -0,0 +1,92 @@
+package org.appland.settlers.maps;
+
+import org.appland.settlers.model.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The information in the fixed size header of a map file. This is what's available without reading any of the
+ * blocks that hold the points.
+ *
+ */
+public class MapHeader {
+    private final String title;
+    private final String author;
+    private final int width;
+    private final int height;
+    private final TerrainType terrainType;
+    private final int maxNumberOfPlayers;
+    private final MapTitleType titleType;
+    private final List<Point> startingPositions;
+
+    MapHeader(MapFile mapFile) {
+        title = mapFile.getTitle();
+        author = mapFile.getAuthor();
+        width = mapFile.getWidth();
+        height = mapFile.getHeight();
+        terrainType = mapFile.getTerrainType();
+        maxNumberOfPlayers = mapFile.getMaxNumberOfPlayers();
+        titleType = mapFile.getMapTitleType();
+
+        /* Translate the starting points to game points and filter the ones that are outside the map */
+        List<Point> gamePoints = new ArrayList<>();
+
+        for (java.awt.Point fileStartingPoint : mapFile.getFileStartingPoints()) {
+            Point gamePoint = MapFile.mapFilePositionToGamePoint(width, height, fileStartingPoint);
+
+            if (gamePoint != null) {
+                gamePoints.add(gamePoint);
+            }
+        }
+
+        startingPositions = Collections.unmodifiableList(gamePoints);
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public TerrainType getTerrainType() {
+        return terrainType;
+    }
+
+    public int getMaxNumberOfPlayers() {
+        return maxNumberOfPlayers;
+    }
+
+    public MapTitleType getTitleType() {
+        return titleType;
+    }
+
+    public List<Point> getStartingPositions() {
+        return startingPositions;
+    }
+
+    @Override
+    public String toString() {
+        return "MapHeader{" +
+                "title='" + title + '\'' +
+                ", author='" + author + '\'' +
+                ", width=" + width +
+                ", height=" + height +
+                ", terrainType=" + terrainType +
+                ", maxNumberOfPlayers=" + maxNumberOfPlayers +
+                ", titleType=" + titleType +
+                ", startingPositions=" + startingPositions +
+                '}';
+    }
+}
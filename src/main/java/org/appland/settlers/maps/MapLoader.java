@@ -1,22 +1,28 @@
 package org.appland.settlers.maps;
 
-import org.appland.settlers.model.DecorationType;
 import org.appland.settlers.model.GameMap;
-import org.appland.settlers.model.Material;
-import org.appland.settlers.model.Player;
-import org.appland.settlers.model.Tree;
-import org.appland.settlers.model.TreeSize;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 
-import java.awt.Color;
 import java.awt.Point;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,13 +32,31 @@ import java.util.logging.Logger;
  */
 public class MapLoader {
 
+    /* The header before the first block always has the same size */
+    static final int FILE_HEADER_SIZE = 2352;
+
     @Option(name="--file", usage="Map file to load")
     String filename;
 
     @Option(name="--debug", usage="Print debug information")
     boolean debug = true;
 
-    private boolean doCropping = true;
+    @Option(name="--lazy", usage="Decode each block of the map the first time it's used")
+    boolean lazyLoading = false;
+
+    @Option(name="--cache-dir", usage="Folder to cache decoded maps in so they load faster the next time")
+    String cacheDir;
+
+    @Option(name="--to-smm", usage="Writes the map to the given file in the compact .smm container format")
+    String toSmm;
+
+    @Option(name="--to-map", usage="Writes the map to the given file in the original SWD/WLD format")
+    String toMap;
+
+    @Option(name="--off-heap", usage="Keep the planes of the map outside of the Java heap")
+    boolean offHeap = false;
+
+    boolean doCropping = true;
 
     public static void main(String[] args) {
 
@@ -44,7 +68,22 @@ public class MapLoader {
         try {
             parser.parseArgument(args);
 
-            MapFile mapFile = mapLoader.loadMapFromFile(mapLoader.filename);
+            MapFile mapFile;
+
+            if (mapLoader.cacheDir != null) {
+                mapFile = new MapCache(Paths.get(mapLoader.cacheDir), mapLoader).load(Paths.get(mapLoader.filename));
+            } else {
+                mapFile = mapLoader.loadMapFromFile(mapLoader.filename);
+            }
+
+            if (mapLoader.toSmm != null) {
+                new MapContainerWriter(true).write(mapFile, Paths.get(mapLoader.toSmm));
+            }
+
+            if (mapLoader.toMap != null) {
+                new MapWriter().write(mapFile, Paths.get(mapLoader.toMap));
+            }
+
             GameMap gameMap = mapLoader.convertMapFileToGameMap(mapFile);
         } catch (Exception | InvalidMapException ex) {
             Logger.getLogger(MapLoader.class.getName()).log(Level.SEVERE, null, ex);
@@ -57,16 +96,168 @@ public class MapLoader {
         printlnIfDebug();
         printlnIfDebug("Loading: " + mapFilename);
 
-        FileInputStream fileInputStream = new FileInputStream(mapFilename);
+        try (FileInputStream fileInputStream = new FileInputStream(mapFilename)) {
+            return loadMapFromStream(fileInputStream);
+        }
+    }
+
+    /**
+     * Loads the map by memory mapping the file and decoding it directly from the mapped buffer. This avoids the
+     * per-byte reads that go through the stream based path.
+     *
+     * The map keeps views of the mapped file instead of copies for the file header, the blocks that are not decoded
+     * into planes and the bytes after the last block, and for all blocks when loading lazily. The file must therefore
+     * not be changed or truncated while the map is in use. MapWriter.write replaces the file instead of changing it,
+     * so the map can be saved over the file it was loaded from. Load through a stream to get a map that doesn't
+     * depend on the file.
+     *
+     * @param mapPath
+     * @return
+     * @throws SettlersMapLoadingException
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public MapFile loadMapFromPath(Path mapPath) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        printlnIfDebug();
+        printlnIfDebug("Loading: " + mapPath);
+
+        MappedByteBuffer mappedFile;
+
+        /* The mapping remains valid after the channel is closed */
+        try (FileChannel fileChannel = FileChannel.open(mapPath, StandardOpenOption.READ)) {
+            mappedFile = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+
+        return loadMapFromBuffer(mappedFile);
+    }
+
+    /**
+     * Loads the map without blocking the calling thread. The file is read through an asynchronous file channel and
+     * the map is decoded on the given executor once the whole file is read.
+     *
+     * Cancelling the returned future, or completing it in any other way, e.g. with orTimeout(), stops the reading
+     * within the block being read and closes the file.
+     *
+     * @param mapPath
+     * @param executor
+     * @return
+     */
+    public CompletableFuture<MapFile> loadAsync(Path mapPath, Executor executor) {
+        printlnIfDebug();
+        printlnIfDebug("Loading: " + mapPath);
+
+        AsynchronousFileChannel channel = null;
+
+        try {
+            channel = AsynchronousFileChannel.open(mapPath, StandardOpenOption.READ);
+
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new SettlersMapLoadingException("The file " + mapPath + " is too large to be a map. Size: " + size);
+            }
+
+            return new AsyncMapReader(this, channel, (int) size, executor).start();
+        } catch (IOException | SettlersMapLoadingException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Loads all maps in the ZIP archive, without extracting them first. Entries that are stored without compression
+     * are decoded in place from the memory mapped archive, and the other entries are inflated in memory. The entries
+     * are loaded in parallel, one entry per thread.
+     *
+     * @param archivePath
+     * @return the maps by the name of their entry, in the order of the entries in the archive
+     * @throws SettlersMapLoadingException
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public Map<String, MapFile> loadAllFromArchive(Path archivePath) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        List<MapArchive.Entry> entries = MapArchive.open(archivePath).getMapEntries();
+        List<MapFile> loadedMapFiles = new ArrayList<>();
+
+        int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+        /* The maps are handed over in the order of the entries */
+        new CorpusLoader(this, numberOfThreads, numberOfThreads * 2).loadAll(entries,
+                loadedMap -> loadedMapFiles.add(loadedMap.mapFile));
+
+        Map<String, MapFile> mapFiles = new LinkedHashMap<>();
+
+        for (int i = 0; i < entries.size(); i++) {
+            mapFiles.put(entries.get(i).getEntryName(), loadedMapFiles.get(i));
+        }
+
+        return mapFiles;
+    }
+
+    /**
+     * Loads the map from the bytes between the buffer's position and its limit. The map is decoded directly from the
+     * buffer using absolute indexing so the buffer's position and limit are not changed and its contents are not
+     * copied first. Both heap and direct buffers can be used.
+     *
+     * The map keeps views of the blocks it doesn't decode, and when loading lazily a reference to the whole buffer, so
+     * the contents of the buffer must not change while the map is in use.
+     *
+     * @param buffer
+     * @return
+     * @throws SettlersMapLoadingException
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public MapFile loadMapFromBuffer(ByteBuffer buffer) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        return loadMapFromReader(new BufferReader(buffer, ByteOrder.LITTLE_ENDIAN));
+    }
 
-        return loadMapFromStream(fileInputStream);
+    /**
+     * Loads the map from a range in the byte array, without copying it
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return
+     * @throws SettlersMapLoadingException
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public MapFile loadMapFromBytes(byte[] bytes, int offset, int length) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        return loadMapFromBuffer(ByteBuffer.wrap(bytes, offset, length));
     }
 
     private void printlnIfDebug() {
-        System.out.println();
+        if (debug) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Returns a loader with the same options that doesn't print debug information, e.g. for loading maps in parallel
+     * where the output of the loads would be interleaved
+     *
+     * @return
+     */
+    MapLoader withoutDebug() {
+        MapLoader mapLoader = new MapLoader();
+
+        mapLoader.debug = false;
+        mapLoader.lazyLoading = lazyLoading;
+        mapLoader.offHeap = offHeap;
+        mapLoader.doCropping = doCropping;
+
+        return mapLoader;
     }
 
-    private void printlnIfDebug(Object message) {
+    void printlnIfDebug(Object message) {
         if (debug) {
             System.out.println(message);
         }
@@ -80,171 +271,226 @@ public class MapLoader {
 
     public MapFile loadMapFromStream(InputStream inputStream) throws SettlersMapLoadingException, IOException, InvalidMapException {
 
-        debug = true;
+        /* Blocks can only be decoded later if the data is kept, so read the whole stream when loading lazily */
+        if (lazyLoading) {
+            byte[] data = inputStream.readAllBytes();
 
-        StreamReader streamReader = new StreamReader(inputStream, ByteOrder.LITTLE_ENDIAN);
+            return loadMapFromBytes(data, 0, data.length);
+        }
 
-        MapFile mapFile = new MapFile();
+        return loadMapFromReader(new StreamReader(inputStream, ByteOrder.LITTLE_ENDIAN));
+    }
 
-        /* Read file header */
-        String fileHeader = streamReader.getUint8ArrayAsString(10);
+    /**
+     * Selects whether blocks are decoded when the map is loaded, or the first time they are used. Lazy loading only
+     * indexes where each block starts in the file, so jobs that only look at e.g. heights and textures don't pay for
+     * decoding the rest of the blocks.
+     *
+     * @param lazyLoading
+     */
+    public void setLazyLoading(boolean lazyLoading) {
+        this.lazyLoading = lazyLoading;
+    }
 
-        printlnIfDebug(" -- File header: " + fileHeader);
+    /**
+     * Selects whether the planes of loaded maps are moved outside of the Java heap. All planes are decoded when they
+     * are moved, so this gains nothing from lazy loading. Close the maps to free the memory right away.
+     *
+     * @param offHeap
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
 
-        /* Read title and potentially width & height.
-        *   - Next 24 bytes are either 20 byte title + 2 byte width + 2 byte height, or
-        *     24 bytes title
-        *  */
+    /**
+     * Reads only the fixed size header at the start of the file. This gives the title, author, dimensions, terrain,
+     * players and starting positions without reading any of the blocks that hold the points.
+     *
+     * @param mapPath
+     * @return
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public MapHeader probeHeader(Path mapPath) throws IOException, InvalidMapException {
+        ByteBuffer headerBuffer = ByteBuffer.allocate(FILE_HEADER_SIZE);
+
+        try (FileChannel fileChannel = FileChannel.open(mapPath, StandardOpenOption.READ)) {
+            while (headerBuffer.hasRemaining()) {
+                if (fileChannel.read(headerBuffer) == -1) {
+                    throw new EOFException("The file " + mapPath + " is too short to contain a map header");
+                }
+            }
+        }
 
-        ByteArray titleAndMaybeWidthAndHeight = streamReader.getUint8ArrayAsByteArray(24);
+        headerBuffer.flip();
 
-        int maybeWidth = titleAndMaybeWidthAndHeight.getUint16(20);
-        int maybeHeight = titleAndMaybeWidthAndHeight.getUint16(22);
+        return probeHeader(headerBuffer);
+    }
 
-        printlnIfDebug(" -- Maybe width x height: " + maybeWidth + " x " + maybeHeight);
+    /**
+     * Reads only the fixed size header at the start of the map held between the buffer's position and limit. The
+     * buffer's position is not changed.
+     *
+     * @param buffer
+     * @return
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public MapHeader probeHeader(ByteBuffer buffer) throws IOException, InvalidMapException {
+        if (buffer.remaining() < FILE_HEADER_SIZE) {
+            throw new EOFException("The buffer is too short to contain a map header");
+        }
 
-        /* Read the terrain type */
-        mapFile.setTerrainType(TerrainType.fromUint8(streamReader.getUint8()));
+        MapFile mapFile = new MapFile();
 
-        printlnIfDebug(" -- Terrain type: " + mapFile.getTerrainType());
+        readFileHeader(new BufferReader(buffer.slice(), ByteOrder.LITTLE_ENDIAN), mapFile);
 
-        /* Read number of players */
-        mapFile.setMaxNumberOfPlayers(streamReader.getUint8());
+        return new MapHeader(mapFile);
+    }
 
-        printlnIfDebug(" -- Number of players: " + mapFile.getMaxNumberOfPlayers());
+    /**
+     * Reads the map from the stream and passes the contents to the visitor as it goes, without creating a MapFile.
+     * The visitor first gets the header, then each block as its header is read, and finally the values of each point
+     * in the order the points appear in the file. The values are the raw uint8 values from the blocks.
+     *
+     * The file holds one block per value, so a point is only complete once the last of its blocks has been read.
+     * The eight blocks that make up the points are therefore kept until the end of the stream, and no point is
+     * visited before that. The other blocks, including the gouraud shading, are skipped. This uses about eight bytes
+     * per point, which is less than a loaded MapFile but not a constant amount of memory.
+     *
+     * @param inputStream
+     * @param visitor
+     * @throws SettlersMapLoadingException
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public void stream(InputStream inputStream, MapPointVisitor visitor) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        StreamReader streamReader = new StreamReader(inputStream, ByteOrder.LITTLE_ENDIAN);
 
-        if (mapFile.getMaxNumberOfPlayers() < 1) {
-            throw new InvalidMapException("The map must contain at least one player");
-        }
+        /* The map file is only used to hold the header */
+        MapFile mapFile = new MapFile();
 
-        /* Read the author */
-        mapFile.setAuthor(streamReader.getUint8ArrayAsNullTerminatedString(20));
+        readFileHeader(streamReader, mapFile);
 
-        printlnIfDebug(" -- Author: " + mapFile.getAuthor());
+        visitor.visitHeader(new MapHeader(mapFile));
 
-        /* Go through x coordinates for starting positions */
-        List<java.awt.Point> tmpStartingPositions = new ArrayList<>();
+        BlockHeader heightBlockHeader = readHeightBlockHeader(streamReader, mapFile);
 
-        for (int i = 0; i < 7; i++) {
-            int x = streamReader.getUint16();
+        int numberOfPoints = (int) (heightBlockHeader.getMultiplier() * heightBlockHeader.getBlockLength());
 
-            if (i < mapFile.getMaxNumberOfPlayers()) {
-                tmpStartingPositions.add(new Point(x, 0));
-            }
-        }
+        /* Keep the blocks that the points are made up of until all of them are read */
+        byte[][] planes = new byte[MapPlane.values().length][];
 
-        /* Go through y coordinates for starting positions */
-        for (int i = 0; i < 7; i++) {
-            int y = streamReader.getUint16();
+        for (MapBlock block : MapBlock.values()) {
+            BlockHeader blockHeader = readMatchingBlockHeader(streamReader, block, heightBlockHeader);
 
-            if (i < mapFile.getMaxNumberOfPlayers()) {
-                tmpStartingPositions.get(i).y = y;
+            visitor.visitBlock(block, blockHeader);
 
-                mapFile.addStartingPosition(tmpStartingPositions.get(i));
+            if (block.getPlane() != null && block.getPlane() != MapPlane.SHADING) {
+                byte[] plane = new byte[numberOfPoints];
+
+                streamReader.readUint8Plane(plane);
+
+                planes[block.getPlane().ordinal()] = plane;
+            } else {
+                streamReader.skip(numberOfPoints);
             }
         }
 
-        printlnIfDebug(" -- Starting positions: " + tmpStartingPositions);
-
-        /* Determine if the map is intended for unlimited play */
-        if (streamReader.getUint8() == 0) {
-            mapFile.enableUnlimitedPlay();
-        } else {
-            mapFile.disableUnlimitedPlay();
+        byte[] heights = planes[MapPlane.HEIGHTS.ordinal()];
+        byte[] texturesBelow = planes[MapPlane.TEXTURE_BELOW.ordinal()];
+        byte[] texturesDownRight = planes[MapPlane.TEXTURE_DOWN_RIGHT.ordinal()];
+        byte[] objectProperties = planes[MapPlane.OBJECT_PROPERTIES.ordinal()];
+        byte[] objectTypes = planes[MapPlane.OBJECT_TYPE.ordinal()];
+        byte[] animals = planes[MapPlane.ANIMALS.ordinal()];
+        byte[] buildableSites = planes[MapPlane.BUILDABLE.ordinal()];
+        byte[] resources = planes[MapPlane.RESOURCES.ordinal()];
+
+        for (int i = 0; i < numberOfPoints; i++) {
+            visitor.visitPoint(i,
+                    heights[i] & 0xff,
+                    texturesBelow[i] & 0xff,
+                    texturesDownRight[i] & 0xff,
+                    objectProperties[i] & 0xff,
+                    objectTypes[i] & 0xff,
+                    animals[i] & 0xff,
+                    buildableSites[i] & 0xff,
+                    resources[i] & 0xff);
         }
+    }
 
-        printlnIfDebug(" -- Unlimited play: " + mapFile.isPlayUnlimited());
+    private MapFile loadMapFromReader(BinaryReader streamReader) throws SettlersMapLoadingException, IOException, InvalidMapException {
 
-        /* Read player faces */
-        List<PlayerFace> playerFaces = new ArrayList<>();
-        for (int i = 0; i < 7; i++) {
+        MapFile mapFile = new MapFile();
 
-            short faceType = streamReader.getUint8();
+        /* Keep the file header as it is, so the map can be written back unchanged */
+        ByteBuffer fileHeader = streamReader.getUint8ArrayAsBuffer(FILE_HEADER_SIZE);
 
-            if (i < mapFile.getMaxNumberOfPlayers()) {
-                PlayerFace playerFace = PlayerFace.playerFaceFromShort(faceType);
+        readFileHeader(new BufferReader(fileHeader, ByteOrder.LITTLE_ENDIAN), mapFile);
 
-                playerFaces.add(playerFace);
-            }
-        }
-
-        mapFile.setPlayerFaces(playerFaces);
+        mapFile.setFileHeader(fileHeader);
 
-        for (PlayerFace face : mapFile.getPlayerFaces()) {
-            printlnIfDebug(" -- Player: " + face.name());
-        }
+        BlockHeader heightBlockHeader = readHeightBlockHeader(streamReader, mapFile);
 
-        /* Read starting points for each unique water and land mass */
-        List<UniqueMass> masses = new ArrayList<>();
+        long subBlockSize = heightBlockHeader.getMultiplier() * heightBlockHeader.getBlockLength();
 
-        for (int i = 0; i < 250; i++) {
-            MassType type = MassType.massTypeFromInt(streamReader.getUint8());
+        printlnIfDebug(" -- Data size: " + (int)subBlockSize);
 
-            int x = streamReader.getUint16();
-            int y = streamReader.getUint16();
+        mapFile.setBlockHeader(heightBlockHeader);
 
-            java.awt.Point position = new java.awt.Point(x, y);
+        /* Only index the blocks when loading lazily. Each block is then decoded the first time it's used */
+        BlockIndex blockIndex = null;
 
-            long totalMass = streamReader.getUint32();
-            UniqueMass mass = new UniqueMass(type, position, totalMass);
+        if (lazyLoading && streamReader instanceof BufferReader) {
+            blockIndex = new BlockIndex(((BufferReader) streamReader).getBuffer());
 
-            masses.add(mass);
+            mapFile.setBlockIndex((int) subBlockSize, blockIndex);
+        } else {
 
-            if (!position.equals(new java.awt.Point(0, 0))) {
-                mapFile.addMassStartingPoint(position);
-            }
+            /* Each block is read in one go straight into its plane in the map file */
+            mapFile.allocatePlanes((int) subBlockSize);
         }
 
-        printlnIfDebug(" -- Loaded starting points for water and land masses");
+        /* Read the blocks. They all have the same header as the height block */
+        for (MapBlock block : MapBlock.values()) {
 
-        /* Read map file identification */
-        byte[] fileIdBytes = streamReader.getUint8ArrayAsBytes(2);
+            BlockHeader blockHeader = readMatchingBlockHeader(streamReader, block, heightBlockHeader);
 
-        /* Verify file id */
-        if (fileIdBytes[0] != 0x11 || fileIdBytes[1] != 0x27) {
-            System.out.println("Warning: Invalid file id " + Utils.getHex(fileIdBytes) + " (must be 0x1127). Exiting.");
+            if (block.getPlane() == null) {
 
-            //throw new SettlersMapLoadingException("Invalid file id " + Utils.getHex(fileIdBytes) + " (must be 0x1127). Exiting.");
-        }
-
-        /* Skip four un-used bytes */
-        byte[] unusedBytes = streamReader.getUint8ArrayAsBytes(4);
+                /* Keep blocks that are not used as they are, so the map can be written back unchanged */
+                mapFile.retainBlock(block, streamReader.getUint8ArrayAsBuffer((int) subBlockSize));
+            } else if (blockIndex != null) {
+                blockIndex.add(block, blockHeader, (int) ((BufferReader) streamReader).getOffset());
 
-        if (unusedBytes[0] != 0 || unusedBytes[1] != 0 ||
-            unusedBytes[2] != 0 || unusedBytes[3] != 0) {
-            System.out.println("Warning: Not zeros although mandatory. Are instead " +
-                                unusedBytes[0] + " " +
-                    unusedBytes[0] + " " +
-                    unusedBytes[0] + " " +
-                    unusedBytes[0] + " ");
+                streamReader.skip((int) subBlockSize);
+            } else {
+                streamReader.readUint8Plane(mapFile.getPlane(block.getPlane()));
+            }
         }
 
-        /* Extra 01 00 bytes may appear here but no files seen so far have this -- might be bug in one map */
-        // TODO: implement using streamReader
+        /* Footer, always 0xFF. Keep it together with anything else that follows the blocks */
+        mapFile.setTrailingBytes(streamReader.getRemainingAsBuffer());
 
-        /* Read actual width and height, as used by map loaders */
-        int newWidth = streamReader.getUint16();
-        int newHeight = streamReader.getUint16();
-
-        String title;
-
-        if (newWidth != maybeWidth || newHeight != maybeHeight) {
-            title = titleAndMaybeWidthAndHeight.getNullTerminatedString(24);
+        /* Post process the map file */
+        mapFile.mapFilePointsToGamePoints();
+        mapFile.translateFileStartingPointsToGamePoints();
 
-            mapFile.setTitleType(MapTitleType.LONG);
-        } else {
-            title = titleAndMaybeWidthAndHeight.getNullTerminatedString(20);
+        if (offHeap) {
+            mapFile.moveOffHeap();
 
-            mapFile.setTitleType(MapTitleType.SHORT);
+            if (DirectMemory.getReleaseUnavailableCause() != null) {
+                printlnIfDebug("Warning: Off-heap memory will be freed by the garbage collector: " + DirectMemory.getReleaseUnavailableCause());
+            }
         }
 
-        mapFile.setWidth(newWidth);
-        mapFile.setHeight(newHeight);
-        mapFile.setTitle(title);
+        return mapFile;
+    }
 
-        System.out.println(" -- Title type is: " + mapFile.getTitleType());
-        System.out.println(" -- Title is: " + title);
-        System.out.println(" -- Width x height: " + newWidth + " x " + newHeight);
+    /**
+     * Reads the header of the first block, which holds the heights, and verifies it against the file header
+     */
+    private BlockHeader readHeightBlockHeader(BinaryReader streamReader, MapFile mapFile) throws SettlersMapLoadingException, IOException {
 
         /* Read first sub block fileHeader with data about heights */
         BlockHeader heightBlockHeader = readBlockHeaderFromStream(streamReader);
@@ -273,325 +519,200 @@ public class MapLoader {
         /* Handle fixed 01 00 if they appear */
         // TODO: implement using streamReader
 
-        long subBlockSize = heightBlockHeader.getMultiplier() * heightBlockHeader.getBlockLength();
-
-        printlnIfDebug(" -- Data size: " + (int)subBlockSize);
-
-        /* Read heights block */
-        for (int i = 0; i < subBlockSize; i++) {
-            MapFilePoint spot = new MapFilePoint();
-
-            spot.setHeight(streamReader.getUint8());
+        return heightBlockHeader;
+    }
 
-            mapFile.addSpot(spot);
+    /**
+     * Reads the header of the given block and verifies that it matches the header of the height block. The header of
+     * the height block has already been read so it's returned as is.
+     */
+    private BlockHeader readMatchingBlockHeader(BinaryReader streamReader, MapBlock block, BlockHeader heightBlockHeader) throws SettlersMapLoadingException, IOException {
+        if (block == MapBlock.HEIGHTS) {
+            return heightBlockHeader;
         }
 
-        printlnIfDebug(" -- Loaded heights");
+        printIfDebug("Block with " + block.getDescription() + ": ");
 
-        /* Read textures below */
-        printlnIfDebug();
-        printIfDebug("Texture block 1: ");
-
-        /* Read the header and verify that it matches the first header */
-        BlockHeader texturesBelowBlockHeader = readBlockHeaderFromStream(streamReader);
+        BlockHeader blockHeader = readBlockHeaderFromStream(streamReader);
 
-        if (!texturesBelowBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for upward triangles doesn't match. Exiting.");
+        /* Exit if the block header doesn't match the first header */
+        if (!blockHeader.equals(heightBlockHeader)) {
+            System.out.println("Header of block for " + block.getDescription() + " doesn't match. Exiting.");
             System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + texturesBelowBlockHeader);
+            System.out.println("Current header: " + blockHeader);
 
-            throw new SettlersMapLoadingException("Header of block for upward triangles doesn't match. Exiting.");
+            throw new SettlersMapLoadingException("Header of block for " + block.getDescription() + " doesn't match. Exiting.");
         } else {
-            printlnIfDebug("Header for textures below matches");
+            printlnIfDebug("Header for " + block.getDescription() + " matches");
         }
 
-        /* Read the below texture for each point on the map */
-        for (int i = 0; i < subBlockSize; i++) {
-
-            MapFilePoint mapFilePoint = mapFile.getSpot(i);
-
-            /* Set the textures */
-            short belowTextureShort = streamReader.getUint8();
-            Texture texture = Texture.textureFromUint8(belowTextureShort);
+        return blockHeader;
+    }
 
-            mapFilePoint.setVegetationBelow(texture);
+    /**
+     * Reads the fixed size header that comes before the first block and stores its contents in the map file
+     */
+    private void readFileHeader(BinaryReader streamReader, MapFile mapFile) throws IOException, InvalidMapException {
 
-            /* Set the possible harbors */
-            if ((belowTextureShort & 0x40) != 0) {
-                mapFilePoint.setPossibleHarbor();
-            }
-        }
+        /* Read file header */
+        String fileHeader = streamReader.getUint8ArrayAsString(10);
 
-        /* Read textures for down-pointing triangles */
-        printIfDebug("Texture block 2: ");
+        printlnIfDebug(" -- File header: " + fileHeader);
 
-        /* Read down-right textures header */
-        BlockHeader texturesDownRightBlockHeader = readBlockHeaderFromStream(streamReader);
+        /* Read title and potentially width & height.
+        *   - Next 24 bytes are either 20 byte title + 2 byte width + 2 byte height, or
+        *     24 bytes title
+        *  */
 
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!texturesDownRightBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for downward triangles doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + texturesDownRightBlockHeader);
+        ByteArray titleAndMaybeWidthAndHeight = streamReader.getUint8ArrayAsByteArray(24);
 
-            throw new SettlersMapLoadingException("Header of block for downward triangles doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for textures down right matches");
-        }
+        int maybeWidth = titleAndMaybeWidthAndHeight.getUint16(20);
+        int maybeHeight = titleAndMaybeWidthAndHeight.getUint16(22);
 
-        /* Read textures */
-        for (int i = 0; i < subBlockSize; i++) {
-            Texture texture = Texture.textureFromUint8(streamReader.getUint8());
+        printlnIfDebug(" -- Maybe width x height: " + maybeWidth + " x " + maybeHeight);
 
-            mapFile.getSpot(i).setVegetationDownRight(texture);
-        }
+        /* Read the terrain type */
+        mapFile.setTerrainType(TerrainType.fromUint8(streamReader.getUint8()));
 
-        /* Read the fourth sub block fileHeader with roads */
-        printIfDebug("Road block: ");
+        printlnIfDebug(" -- Terrain type: " + mapFile.getTerrainType());
 
-        /* Read road block -- ignore for now */
-        BlockHeader roadBlockHeader = readBlockHeaderFromStream(streamReader);
+        /* Read number of players */
+        mapFile.setMaxNumberOfPlayers(streamReader.getUint8());
 
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!roadBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of road block doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + roadBlockHeader);
+        printlnIfDebug(" -- Number of players: " + mapFile.getMaxNumberOfPlayers());
 
-            throw new SettlersMapLoadingException("Header of block for roads doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for road block matches");
+        if (mapFile.getMaxNumberOfPlayers() < 1) {
+            throw new InvalidMapException("The map must contain at least one player");
         }
 
-        /* Read roads -- ignore this block for now*/
-        streamReader.skip((int) subBlockSize);
+        /* Read the author */
+        mapFile.setAuthor(streamReader.getUint8ArrayAsNullTerminatedString(20));
 
-        /* Read block with object properties */
-        printIfDebug("Object property block: ");
+        printlnIfDebug(" -- Author: " + mapFile.getAuthor());
 
-        /* Read the block header */
-        BlockHeader objectPropertiesBlockHeader = readBlockHeaderFromStream(streamReader);
+        /* Read the x and the y coordinates for the starting positions */
+        int[] startingPositionsX = new int[7];
+        int[] startingPositionsY = new int[7];
 
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!objectPropertiesBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for object properties doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + objectPropertiesBlockHeader);
+        streamReader.readUint16Array(startingPositionsX);
+        streamReader.readUint16Array(startingPositionsY);
 
-            throw new SettlersMapLoadingException("Header of block for object properties doesn't match. Exiting.");
-        } else {
-            System.out.println("Header for object properties right matches");
-        }
+        List<java.awt.Point> tmpStartingPositions = new ArrayList<>();
 
-        /* Read object properties */
-        for (int i = 0; i < subBlockSize; i++) {
-            mapFile.getSpot(i).setObjectProperties(streamReader.getUint8());
-        }
+        for (int i = 0; i < 7 && i < mapFile.getMaxNumberOfPlayers(); i++) {
+            java.awt.Point startingPosition = new Point(startingPositionsX[i], startingPositionsY[i]);
 
-        /* Read object types */
-        printIfDebug("Object type block: ");
+            tmpStartingPositions.add(startingPosition);
 
-        /* Read object types */
-        BlockHeader objectTypesBlockHeader = readBlockHeaderFromStream(streamReader);
+            mapFile.addStartingPosition(startingPosition);
+        }
 
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!objectTypesBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for object types doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + objectTypesBlockHeader);
+        printlnIfDebug(" -- Starting positions: " + tmpStartingPositions);
 
-            throw new SettlersMapLoadingException("Header of block for object types doesn't match. Exiting.");
+        /* Determine if the map is intended for unlimited play */
+        if (streamReader.getUint8() == 0) {
+            mapFile.enableUnlimitedPlay();
         } else {
-            printlnIfDebug("Header for object types matches");
-        }
-
-        /* Read object types*/
-        for (int i = 0; i < subBlockSize; i++) {
-            mapFile.getSpot(i).setObjectType(streamReader.getUint8());
+            mapFile.disableUnlimitedPlay();
         }
 
-        /* Read animals */
-        printIfDebug("Animals block: ");
-
-        /* Read block header */
-        BlockHeader wildAnimalsBlockHeader = readBlockHeaderFromStream(streamReader);
+        printlnIfDebug(" -- Unlimited play: " + mapFile.isPlayUnlimited());
 
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!wildAnimalsBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for wild animals doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + wildAnimalsBlockHeader);
+        /* Read player faces */
+        List<PlayerFace> playerFaces = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
 
-            throw new SettlersMapLoadingException("Header of block for wild animals doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for wild animals matches");
-        }
+            short faceType = streamReader.getUint8();
 
-        /* Read animals */
-        for (int i = 0; i < subBlockSize; i++) {
-            Animal animal = Animal.animalFromInt(streamReader.getUint8());
+            if (i < mapFile.getMaxNumberOfPlayers()) {
+                PlayerFace playerFace = PlayerFace.playerFaceFromShort(faceType);
 
-            if (animal.isWildAnimal()) {
-                mapFile.getSpot(i).setAnimal(animal);
+                playerFaces.add(playerFace);
             }
         }
 
-        /* Skip block with unknown data */
-        printIfDebug("Unknown block: ");
-
-        /* Read block header */
-        BlockHeader ignoredBlockHeader = readBlockHeaderFromStream(streamReader);
-
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!ignoredBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for ignored block doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + ignoredBlockHeader);
+        mapFile.setPlayerFaces(playerFaces);
 
-            throw new SettlersMapLoadingException("Header of ignored block doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for ignored block matches");
+        for (PlayerFace face : mapFile.getPlayerFaces()) {
+            printlnIfDebug(" -- Player: " + face.name());
         }
 
-        /* Skip the block */
-        streamReader.skip((int)subBlockSize);
-
-        /* Read buildable sites */
-        printIfDebug("Buildable sites block: ");
-
-        /* Read block header */
-        BlockHeader buildableSitesBlockHeader = readBlockHeaderFromStream(streamReader);
-
-        /* Verify that the block header matches the previous ones */
-        if (!buildableSitesBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for buildable sites doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + buildableSitesBlockHeader);
-
-            throw new SettlersMapLoadingException("Header of buildable sites doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for buildable sites matches");
-        }
+        /* Read starting points for each unique water and land mass */
+        List<UniqueMass> masses = new ArrayList<>();
 
-        /* Read the buildable sites */
-        for (int i = 0; i < subBlockSize; i++) {
-            BuildableSite buildableSite = BuildableSite.buildableSiteFromInt(streamReader.getUint8());
+        for (int i = 0; i < 250; i++) {
+            MassType type = MassType.massTypeFromInt(streamReader.getUint8());
 
-            mapFile.getSpot(i).setBuildableSite(buildableSite);
-        }
+            int x = streamReader.getUint16();
+            int y = streamReader.getUint16();
 
-        /* Skip tenth block with unknown data */
-        printIfDebug("Second unknown block: ");
+            java.awt.Point position = new java.awt.Point(x, y);
 
-        /* Read block header */
-        BlockHeader unknownBlockHeader = readBlockHeaderFromStream(streamReader);
+            long totalMass = streamReader.getUint32();
+            UniqueMass mass = new UniqueMass(type, position, totalMass);
 
-        /* Verify that the block header matches previous block headers */
-        if (!unknownBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of unknown block doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + unknownBlockHeader);
+            masses.add(mass);
 
-            throw new SettlersMapLoadingException("Header of unknown block doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for unknown block matches");
+            if (!position.equals(new java.awt.Point(0, 0))) {
+                mapFile.addMassStartingPoint(position);
+            }
         }
 
-        /* Skip the block */
-        streamReader.skip((int)subBlockSize);
+        mapFile.setMasses(masses);
 
-        /* Skip the next block with map editor cursor position */
-        printIfDebug("Map editor cursor position: ");
+        printlnIfDebug(" -- Loaded starting points for water and land masses");
 
-        /* Get block header */
-        BlockHeader cursorPositionsBlockHeader = readBlockHeaderFromStream(streamReader);
+        /* Read map file identification */
+        byte[] fileIdBytes = streamReader.getUint8ArrayAsBytes(2);
 
-        /* Exit if the block header doesn't match the first header */
-        if (!cursorPositionsBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for cursor positions doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + cursorPositionsBlockHeader);
+        /* Verify file id */
+        if (fileIdBytes[0] != 0x11 || fileIdBytes[1] != 0x27) {
+            System.out.println("Warning: Invalid file id " + Utils.getHex(fileIdBytes) + " (must be 0x1127). Exiting.");
 
-            throw new SettlersMapLoadingException("Header of cursor positions doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for cursor positions matches");
+            //throw new SettlersMapLoadingException("Invalid file id " + Utils.getHex(fileIdBytes) + " (must be 0x1127). Exiting.");
         }
 
-        /* Skip the block */
-        streamReader.skip((int)subBlockSize);
-
-        /* Read the resources block */
-        printIfDebug("Resource block: ");
-
-        /* Get block header */
-        BlockHeader resourcesBlockHeader = readBlockHeaderFromStream(streamReader);
-
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!resourcesBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of block for resources block doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + resourcesBlockHeader);
+        /* Skip four un-used bytes */
+        byte[] unusedBytes = streamReader.getUint8ArrayAsBytes(4);
 
-            throw new SettlersMapLoadingException("Header of resources block doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for resources block matches");
+        if (unusedBytes[0] != 0 || unusedBytes[1] != 0 ||
+            unusedBytes[2] != 0 || unusedBytes[3] != 0) {
+            System.out.println("Warning: Not zeros although mandatory. Are instead " +
+                                unusedBytes[0] + " " +
+                    unusedBytes[0] + " " +
+                    unusedBytes[0] + " " +
+                    unusedBytes[0] + " ");
         }
 
-        /* Read the resources block */
-        for (int i = 0; i < subBlockSize; i++) {
-            Resource resource = Resource.resourceFromInt(streamReader.getUint8());
-
-            mapFile.getSpot(i).setResource(resource);
-        }
+        /* Extra 01 00 bytes may appear here but no files seen so far have this -- might be bug in one map */
+        // TODO: implement using streamReader
 
-        /* Ignore gouraud shading block */
+        /* Read actual width and height, as used by map loaders */
+        int newWidth = streamReader.getUint16();
+        int newHeight = streamReader.getUint16();
 
-        /* Get the block header */
-        BlockHeader gouraudBlockHeader = readBlockHeaderFromStream(streamReader);
+        String title;
 
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!gouraudBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of gouraud block doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + gouraudBlockHeader);
+        if (newWidth != maybeWidth || newHeight != maybeHeight) {
+            title = titleAndMaybeWidthAndHeight.getNullTerminatedString(24);
 
-            throw new SettlersMapLoadingException("Header of gouraud block doesn't match. Exiting.");
+            mapFile.setTitleType(MapTitleType.LONG);
         } else {
-            printlnIfDebug("Header for gouraud block matches");
-        }
-
-        /* Skip gouraud block */
-        streamReader.skip((int)subBlockSize);
-
-        /* Ignore passable areas block */
-
-        /* Get the block header */
-        BlockHeader passableAreasBlockHeader = readBlockHeaderFromStream(streamReader);
-
-        /* Exit if the block fileHeader doesn't match the first fileHeader */
-        if (!gouraudBlockHeader.equals(heightBlockHeader)) {
-            System.out.println("Header of passable areas block doesn't match. Exiting.");
-            System.out.println("First header: " + heightBlockHeader);
-            System.out.println("Current header: " + passableAreasBlockHeader);
+            title = titleAndMaybeWidthAndHeight.getNullTerminatedString(20);
 
-            throw new SettlersMapLoadingException("Header of passable areas block doesn't match. Exiting.");
-        } else {
-            printlnIfDebug("Header for passable areas block matches");
+            mapFile.setTitleType(MapTitleType.SHORT);
         }
 
-        /* Skip passable areas block */
-        streamReader.skip((int)subBlockSize);
-
-        /* Footer, always 0xFF */
-
-        /* Post process the map file */
-        mapFile.mapFilePointsToGamePoints();
-        mapFile.translateFileStartingPointsToGamePoints();
+        mapFile.setWidth(newWidth);
+        mapFile.setHeight(newHeight);
+        mapFile.setTitle(title);
 
-        return mapFile;
+        printlnIfDebug(" -- Title type is: " + mapFile.getTitleType());
+        printlnIfDebug(" -- Title is: " + title);
+        printlnIfDebug(" -- Width x height: " + newWidth + " x " + newHeight);
     }
 
-    private BlockHeader readBlockHeaderFromStream(StreamReader streamReader) throws IOException {
+    private BlockHeader readBlockHeaderFromStream(BinaryReader streamReader) throws IOException {
         int id = streamReader.getUint16();
         long unknown = streamReader.getUint32();
         int width = streamReader.getUint16();
@@ -604,79 +725,17 @@ public class MapLoader {
 
     public GameMap convertMapFileToGameMap(MapFile mapFile) throws Exception {
 
-        /* Generate list of players */
-        List<Player> players = new ArrayList<>();
-
-        for (int i = 0; i < mapFile.maxNumberOfPlayers; i++) {
-            players.add(new Player("Player " + i, new Color(i*20, i*20, i*20)));
-        }
-
-        /* Create initial game map with correct dimensions */
-        GameMap gameMap = new GameMap(players, mapFile.getWidth() * 2 + 2, mapFile.getHeight() + 3);
+        /* Decide what to do with each point in parallel and then apply it to a new game map */
+        GameMapPrototype prototype = GameMapPrototype.fromMapFile(mapFile, doCropping);
 
-        /* Set up the terrain */
-        for (MapFilePoint mapFilePoint : mapFile.getMapFilePoints()) {
+        long applyStart = System.nanoTime();
 
-            org.appland.settlers.model.Point point = mapFilePoint.getGamePointPosition();
+        GameMap gameMap = prototype.newGameMap();
 
-            /* Filter points that have been cropped out */ // TODO: support cropping on/off
-            if (doCropping && (point.x < 1 || point.x >= gameMap.getWidth() || point.y < 1 || point.y >= gameMap.getHeight())) {
-                continue;
-            }
-
-            /* Assign textures */
-            gameMap.setDetailedVegetationBelow(point, Utils.convertTextureToVegetation(mapFilePoint.getVegetationBelow()));
-            gameMap.setDetailedVegetationDownRight(point, Utils.convertTextureToVegetation(mapFilePoint.getVegetationDownRight()));
-
-            /* Set mineral quantities */
-            if (mapFilePoint.hasMineral()) {
-                Material mineral = Utils.resourceTypeToMaterial(mapFilePoint.getMineralType());
-
-                gameMap.setMineralAmount(point, mineral, mapFilePoint.getMineralQuantity());
-            }
-
-            /* Place stones */
-            if (mapFilePoint.hasStone()) {
-                gameMap.placeStone(point);
-            }
-
-            /* Place trees */
-            if (mapFilePoint.hasTree()) {
-                Tree.TreeType treeType = mapFilePoint.getTreeType();
-
-                gameMap.placeTree(point, treeType, TreeSize.FULL_GROWN);
-            }
-
-            /* Place dead trees */
-            if (mapFilePoint.hasDeadTree()) {
-                gameMap.placeDeadTree(point);
-            }
-
-            /* Handle remaining nature decorations */
-            if (mapFilePoint.isNatureDecoration()) {
-                DecorationType decorationType = mapFilePoint.getNatureDecorationType();
-
-                if (DecorationType.NO_IMPACT_ON_GAME.contains(decorationType)) {
-                    gameMap.placeDecoration(point, decorationType);
-                }
-            }
-
-            /* Place wild animals */
-            if (mapFilePoint.hasWildAnimal()) {
-                gameMap.placeWildAnimal(point);
-            }
-
-            /* Set available harbor */
-            if (mapFilePoint.isPossiblePlaceForHarbor()) {
-                gameMap.setPossiblePlaceForHarbor(point);
-            }
-
-            /* Set the height */
-            gameMap.setHeightAtPoint(point, mapFilePoint.getHeight());
-        }
+        long applyNanos = System.nanoTime() - applyStart;
 
-        /* Set starting points */
-        gameMap.setStartingPoints(mapFile.getStartingPoints());
+        printlnIfDebug(String.format(" -- Converted the points: deciding took %.3f ms, applying took %.3f ms",
+                prototype.getDecideNanos() / 1_000_000.0, applyNanos / 1_000_000.0));
 
         if (debug) {
             printIfDebug(" -- Starting positions: ");
@@ -0,0 +1,240 @@
+package org.appland.settlers.maps;
+
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long it takes to load maps through the different loading paths of the MapLoader
+ *
+ */
+public class MapLoaderBenchmark {
+
+    @Option(name = "--file", usage = "Map file to load")
+    String filename = null;
+
+    @Option(name = "--dir", usage = "Folder to load all maps from")
+    String dir = null;
+
+    @Option(name = "--warmup", usage = "Number of rounds to run before measuring")
+    int warmupRounds = 5;
+
+    @Option(name = "--rounds", usage = "Number of measured rounds")
+    int rounds = 20;
+
+    private final MapLoader mapLoader;
+    private final MapLoader lazyMapLoader;
+
+    public MapLoaderBenchmark() {
+        mapLoader = new MapLoader();
+        lazyMapLoader = new MapLoader();
+
+        mapLoader.debug = false;
+        lazyMapLoader.debug = false;
+
+        lazyMapLoader.setLazyLoading(true);
+    }
+
+    public static void main(String[] args) throws Exception, InvalidMapException {
+        MapLoaderBenchmark benchmark = new MapLoaderBenchmark();
+        CmdLineParser parser = new CmdLineParser(benchmark);
+
+        parser.parseArgument(args);
+
+        List<Path> paths = benchmark.listMaps();
+
+        if (paths.isEmpty()) {
+            System.out.println("No maps to load. Use --file or --dir");
+
+            System.exit(1);
+        }
+
+        long totalBytes = 0;
+
+        for (Path path : paths) {
+            totalBytes = totalBytes + Files.size(path);
+        }
+
+        System.out.println("Loading " + paths.size() + " map(s), " + totalBytes + " bytes per round");
+
+        benchmark.run("Stream (loadMapFromFile)", paths, totalBytes, path -> benchmark.mapLoader.loadMapFromFile(path.toString()));
+        benchmark.run("Memory mapped (loadMapFromPath)", paths, totalBytes, benchmark.mapLoader::loadMapFromPath);
+        benchmark.run("Memory mapped, lazy, only heights and textures used", paths, totalBytes, path -> {
+            MapFile mapFile = benchmark.lazyMapLoader.loadMapFromPath(path);
+
+            mapFile.getPlane(MapPlane.HEIGHTS);
+            mapFile.getPlane(MapPlane.TEXTURE_BELOW);
+            mapFile.getPlane(MapPlane.TEXTURE_DOWN_RIGHT);
+
+            return mapFile;
+        });
+
+        /* Convert the maps up front so only reading the containers is measured */
+        Map<Path, ByteBuffer> containers = new HashMap<>();
+        MapContainerWriter containerWriter = new MapContainerWriter(true);
+
+        for (Path path : paths) {
+            containers.put(path, containerWriter.writeToBuffer(benchmark.mapLoader.loadMapFromPath(path)));
+        }
+
+        benchmark.run("Compressed .smm container (MapContainerReader)", paths, totalBytes,
+                path -> new MapContainerReader(containers.get(path)).readMapFile());
+
+        /* Load the maps up front so only decoding the properties of the points is measured */
+        Map<Path, MapFile> mapFiles = new HashMap<>();
+
+        for (Path path : paths) {
+            mapFiles.put(path, benchmark.mapLoader.loadMapFromPath(path));
+        }
+
+        benchmark.run("Decoding the properties of all points (already loaded)", paths, totalBytes, path -> {
+            MapFile mapFile = mapFiles.get(path);
+
+            decodeAllPoints(mapFile);
+
+            return mapFile;
+        });
+
+        MapWriter mapWriter = new MapWriter();
+
+        benchmark.run("Writing SWD/WLD (MapWriter, already loaded)", paths, totalBytes, path -> {
+            MapFile mapFile = mapFiles.get(path);
+
+            mapWriter.writeToBuffer(mapFile);
+
+            return mapFile;
+        });
+
+        benchmark.run("Converting to GameMap (already loaded)", paths, totalBytes, path -> {
+            MapFile mapFile = mapFiles.get(path);
+
+            benchmark.mapLoader.convertMapFileToGameMap(mapFile);
+
+            return mapFile;
+        });
+    }
+
+    /**
+     * Reads every property of every point, the way the conversion to a game map does
+     */
+    private static void decodeAllPoints(MapFile mapFile) {
+        int found = 0;
+
+        for (MapFilePoint mapFilePoint : mapFile.getMapFilePoints()) {
+            if (mapFilePoint.getVegetationBelow() != null) {
+                found++;
+            }
+
+            if (mapFilePoint.getVegetationDownRight() != null) {
+                found++;
+            }
+
+            if (mapFilePoint.getBuildableSite() != null) {
+                found++;
+            }
+
+            if (mapFilePoint.hasWildAnimal()) {
+                found++;
+            }
+
+            if (mapFilePoint.hasMineral() && mapFilePoint.getMineralQuantity() != null) {
+                found++;
+            }
+
+            if (mapFilePoint.hasTree() || mapFilePoint.isNatureDecoration() || mapFilePoint.hasStone()) {
+                found++;
+            }
+        }
+
+        /* Use the result so the work can't be optimized away */
+        if (found == -1) {
+            System.out.println("No points found");
+        }
+    }
+
+    private List<Path> listMaps() throws Exception {
+        List<Path> paths = new ArrayList<>();
+
+        if (filename != null) {
+            paths.add(Paths.get(filename));
+        }
+
+        if (dir != null) {
+            try (Stream<Path> found = Files.find(Paths.get(dir),
+                    Integer.MAX_VALUE,
+                    (path, basicFileAttributes) -> basicFileAttributes.isRegularFile() &&
+                            (path.toFile().getName().matches(".*.SWD") ||
+                             path.toFile().getName().matches(".*.WLD")))) {
+                paths.addAll(found.sorted().collect(Collectors.toList()));
+            }
+        }
+
+        return paths;
+    }
+
+    private void run(String name, List<Path> paths, long totalBytes, MapLoadingFunction loadingFunction) throws Exception, InvalidMapException {
+        PrintStream stdout = System.out;
+
+        long[] roundTimes = new long[rounds];
+
+        /* The loader prints progress unconditionally so keep it quiet while measuring */
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        try {
+            for (int i = 0; i < warmupRounds; i++) {
+                loadAll(paths, loadingFunction);
+            }
+
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+
+                loadAll(paths, loadingFunction);
+
+                roundTimes[i] = System.nanoTime() - start;
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+
+        long fastest = Long.MAX_VALUE;
+        long total = 0;
+
+        for (long roundTime : roundTimes) {
+            fastest = Math.min(fastest, roundTime);
+            total = total + roundTime;
+        }
+
+        double averageSeconds = (total / (double) rounds) / 1_000_000_000.0;
+
+        System.out.println();
+        System.out.println(name);
+        System.out.println(" - Average per round: " + String.format("%.3f ms", averageSeconds * 1000));
+        System.out.println(" - Fastest round: " + String.format("%.3f ms", fastest / 1_000_000.0));
+        System.out.println(" - Average per map: " + String.format("%.3f ms", averageSeconds * 1000 / paths.size()));
+        System.out.println(" - Throughput: " + String.format("%.1f maps/s, %.1f MB/s",
+                paths.size() / averageSeconds,
+                totalBytes / averageSeconds / (1024 * 1024)));
+    }
+
+    private void loadAll(List<Path> paths, MapLoadingFunction loadingFunction) throws Exception, InvalidMapException {
+        for (Path path : paths) {
+            loadingFunction.load(path);
+        }
+    }
+
+    private interface MapLoadingFunction {
+        MapFile load(Path path) throws Exception, InvalidMapException;
+    }
+}
@@ -0,0 +1,275 @@
+package org.appland.settlers.maps;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads the fields of a map that come from the file header, i.e. everything except the points, in the
+ * formats used by the map cache and the map container.
+ *
+ * The fields are stored in this order, all values little endian:
+ *
+ *  - Width, height and max number of players (int)
+ *  - Terrain type and title type (enum)
+ *  - Title and author (string)
+ *  - Unlimited play (byte)
+ *  - Player faces and starting points in the file (int count, then the items)
+ *
+ * The data that a map file keeps so it can be written back unchanged is stored separately, in this order:
+ *
+ *  - The file header as it was loaded (bytes)
+ *  - The header of the blocks (byte 1 if present, then id, must be zero, width, height, multiplier and length)
+ *  - Each block that is not decoded into a plane, in the order of MapBlock (bytes)
+ *  - The bytes after the last block (bytes)
+ *
+ * Strings are stored as an int length followed by UTF-8 bytes, bytes as an int length followed by the bytes, and
+ * enums as their ordinal. Null is stored as -1.
+ *
+ */
+final class MapMetadataCodec {
+
+    private MapMetadataCodec() { }
+
+    static int sizeOf(MapFile mapFile) {
+        return 4 * 3 + 4 * 2 +
+                sizeOf(mapFile.getTitle()) +
+                sizeOf(mapFile.getAuthor()) +
+                1 +
+                4 + 4 * mapFile.getPlayerFaces().size() +
+                4 + 8 * mapFile.getFileStartingPoints().size();
+    }
+
+    static void write(ByteBuffer buffer, MapFile mapFile) {
+        buffer.putInt(mapFile.getWidth());
+        buffer.putInt(mapFile.getHeight());
+        buffer.putInt(mapFile.getMaxNumberOfPlayers());
+        putEnum(buffer, mapFile.getTerrainType());
+        putEnum(buffer, mapFile.getMapTitleType());
+        putString(buffer, mapFile.getTitle());
+        putString(buffer, mapFile.getAuthor());
+        buffer.put((byte) (mapFile.isPlayUnlimited() ? 1 : 0));
+
+        buffer.putInt(mapFile.getPlayerFaces().size());
+
+        for (PlayerFace playerFace : mapFile.getPlayerFaces()) {
+            putEnum(buffer, playerFace);
+        }
+
+        buffer.putInt(mapFile.getFileStartingPoints().size());
+
+        for (java.awt.Point point : mapFile.getFileStartingPoints()) {
+            buffer.putInt(point.x);
+            buffer.putInt(point.y);
+        }
+    }
+
+    /**
+     * Reads the fields into the map file
+     *
+     * @param buffer
+     * @param mapFile
+     * @throws IllegalArgumentException if a string length or an enum is invalid
+     */
+    static void read(ByteBuffer buffer, MapFile mapFile) {
+        mapFile.setWidth(buffer.getInt());
+        mapFile.setHeight(buffer.getInt());
+        mapFile.setMaxNumberOfPlayers(buffer.getInt());
+        mapFile.setTerrainType(getEnum(buffer, TerrainType.values()));
+        mapFile.setTitleType(getEnum(buffer, MapTitleType.values()));
+        mapFile.setTitle(getString(buffer));
+        mapFile.setAuthor(getString(buffer));
+
+        if (buffer.get() != 0) {
+            mapFile.enableUnlimitedPlay();
+        } else {
+            mapFile.disableUnlimitedPlay();
+        }
+
+        int numberOfPlayerFaces = getCount(buffer);
+        List<PlayerFace> playerFaces = new ArrayList<>();
+
+        for (int i = 0; i < numberOfPlayerFaces; i++) {
+            playerFaces.add(getEnum(buffer, PlayerFace.values()));
+        }
+
+        mapFile.setPlayerFaces(playerFaces);
+
+        int numberOfFileStartingPoints = getCount(buffer);
+
+        for (int i = 0; i < numberOfFileStartingPoints; i++) {
+            mapFile.addStartingPosition(new java.awt.Point(buffer.getInt(), buffer.getInt()));
+        }
+    }
+
+    static int sizeOfRetainedData(MapFile mapFile) {
+        int size = sizeOf(mapFile.getFileHeaderView()) + 1 + 4 * 4 + 8 * 2 + sizeOf(mapFile.getTrailingBytesView());
+
+        for (MapBlock block : MapBlock.values()) {
+            if (block.getPlane() == null) {
+                size = size + sizeOf(mapFile.getRetainedBlockView(block));
+            }
+        }
+
+        return size;
+    }
+
+    static void writeRetainedData(ByteBuffer buffer, MapFile mapFile) {
+        putBytes(buffer, mapFile.getFileHeaderView());
+
+        BlockHeader blockHeader = mapFile.getBlockHeader();
+
+        buffer.put((byte) (blockHeader == null ? 0 : 1));
+        buffer.putInt(blockHeader == null ? 0 : blockHeader.getId());
+        buffer.putLong(blockHeader == null ? 0 : blockHeader.getMustBeZero());
+        buffer.putInt(blockHeader == null ? 0 : blockHeader.getWidth());
+        buffer.putInt(blockHeader == null ? 0 : blockHeader.getHeight());
+        buffer.putInt(blockHeader == null ? 0 : (int) blockHeader.getMultiplier());
+        buffer.putLong(blockHeader == null ? 0 : blockHeader.getBlockLength());
+
+        for (MapBlock block : MapBlock.values()) {
+            if (block.getPlane() == null) {
+                putBytes(buffer, mapFile.getRetainedBlockView(block));
+            }
+        }
+
+        putBytes(buffer, mapFile.getTrailingBytesView());
+    }
+
+    /**
+     * Reads the retained data into the map file. The map file keeps read-only views of the buffer instead of copies.
+     *
+     * @param buffer
+     * @param mapFile
+     * @throws IllegalArgumentException if a length is invalid
+     */
+    static void readRetainedData(ByteBuffer buffer, MapFile mapFile) {
+        mapFile.setFileHeader(getBytes(buffer));
+
+        boolean hasBlockHeader = buffer.get() != 0;
+        BlockHeader blockHeader = new BlockHeader(buffer.getInt(), buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.getLong());
+
+        if (hasBlockHeader) {
+            mapFile.setBlockHeader(blockHeader);
+        }
+
+        for (MapBlock block : MapBlock.values()) {
+            if (block.getPlane() == null) {
+                ByteBuffer data = getBytes(buffer);
+
+                if (data != null) {
+                    mapFile.retainBlock(block, data);
+                }
+            }
+        }
+
+        mapFile.setTrailingBytes(getBytes(buffer));
+    }
+
+    static int getCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid count " + count);
+        }
+
+        return count;
+    }
+
+    static int sizeOf(String string) {
+        return 4 + (string == null ? 0 : string.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    static int sizeOf(ByteBuffer bytes) {
+        return 4 + (bytes == null ? 0 : bytes.remaining());
+    }
+
+    static void putBytes(ByteBuffer buffer, ByteBuffer bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+
+            return;
+        }
+
+        buffer.putInt(bytes.remaining());
+        buffer.put(bytes.duplicate());
+    }
+
+    /**
+     * Returns a read-only view of the bytes in the buffer, without copying them
+     *
+     * @param buffer
+     * @return
+     */
+    static ByteBuffer getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+
+        if (length == -1) {
+            return null;
+        }
+
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+
+        ByteBuffer bytes = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        bytes.limit(length);
+
+        buffer.position(buffer.position() + length);
+
+        return bytes.asReadOnlyBuffer();
+    }
+
+    static void putString(ByteBuffer buffer, String string) {
+        if (string == null) {
+            buffer.putInt(-1);
+
+            return;
+        }
+
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+
+        if (length == -1) {
+            return null;
+        }
+
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putEnum(ByteBuffer buffer, Enum<?> value) {
+        buffer.putInt(value == null ? -1 : value.ordinal());
+    }
+
+    private static <T extends Enum<T>> T getEnum(ByteBuffer buffer, T[] values) {
+        int ordinal = buffer.getInt();
+
+        if (ordinal == -1) {
+            return null;
+        }
+
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IllegalArgumentException("Invalid ordinal " + ordinal);
+        }
+
+        return values[ordinal];
+    }
+}
@@ -0,0 +1,18 @@
+package org.appland.settlers.maps;
+
+/**
+ * The per-point values that a MapFile keeps. Each plane holds one uint8 per point on the map, in the same order as
+ * the points are stored in the map file.
+ *
+ */
+enum MapPlane {
+    HEIGHTS,
+    TEXTURE_BELOW,
+    TEXTURE_DOWN_RIGHT,
+    OBJECT_PROPERTIES,
+    OBJECT_TYPE,
+    ANIMALS,
+    BUILDABLE,
+    RESOURCES,
+    SHADING
+}
@@ -0,0 +1,44 @@
+package org.appland.settlers.maps;
+
+/**
+ * Receives the contents of a map as it's read by MapLoader.stream(). This makes it possible to go through all points
+ * of a map, e.g. to collect statistics, without creating a MapFile with all its points.
+ *
+ * Points are identified by their index in the file. The index is row by row, starting at the top left of the map,
+ * so a point's x and y in the file are index % width and index / width.
+ *
+ */
+public interface MapPointVisitor {
+
+    /**
+     * Called once, when the header at the start of the file has been read
+     *
+     * @param mapHeader
+     */
+    default void visitHeader(MapHeader mapHeader) { }
+
+    /**
+     * Called for each block in the file, in the order they appear, when the header of the block has been read
+     *
+     * @param block
+     * @param blockHeader
+     */
+    default void visitBlock(MapBlock block, BlockHeader blockHeader) { }
+
+    /**
+     * Called for each point once all blocks have been read, since each value of a point is in a separate block. The
+     * values are the raw uint8 values from the blocks.
+     *
+     * @param index
+     * @param height
+     * @param textureBelow
+     * @param textureDownRight
+     * @param objectProperties
+     * @param objectType
+     * @param animal
+     * @param buildableSite
+     * @param resource
+     */
+    void visitPoint(int index, int height, int textureBelow, int textureDownRight, int objectProperties,
+                    int objectType, int animal, int buildableSite, int resource);
+}
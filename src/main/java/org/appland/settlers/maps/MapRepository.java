@@ -0,0 +1,234 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps loaded maps in memory so that a map that is requested many times is only loaded once. The cache is bounded
+ * by the estimated size of the maps, and the least recently used maps are evicted first when it's full. A cached
+ * map is reloaded if the file has been modified since it was loaded.
+ *
+ * When several threads request the same map at the same time, only one of them loads it and the others wait for it.
+ *
+ * Note that the returned maps are shared between all callers, so they must not be changed.
+ *
+ * The maps are loaded through a stream, so they hold no views of the files and a file can be changed or replaced
+ * while its map is cached.
+ *
+ */
+public class MapRepository {
+    private final MapLoader mapLoader;
+    private final long maxSizeInBytes;
+
+    /* Guarded by this. Iterates from the least to the most recently used map */
+    private final LinkedHashMap<Path, CachedMap> cachedMaps;
+    private final Map<Path, CompletableFuture<MapFile>> loadsInProgress;
+
+    private long sizeInBytes;
+    private int numberOfLoads;
+
+    public MapRepository(MapLoader mapLoader, long maxSizeInBytes) {
+        this.mapLoader = mapLoader;
+        this.maxSizeInBytes = maxSizeInBytes;
+
+        cachedMaps = new LinkedHashMap<>(16, 0.75f, true);
+        loadsInProgress = new HashMap<>();
+        sizeInBytes = 0;
+        numberOfLoads = 0;
+    }
+
+    /**
+     * Returns the map, either from the cache or by loading it
+     *
+     * @param mapPath
+     * @return
+     * @throws SettlersMapLoadingException
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    public MapFile getMap(Path mapPath) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        Path key = mapPath.toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(key);
+
+        CompletableFuture<MapFile> load;
+        boolean isLoadingThread = false;
+
+        synchronized (this) {
+            CachedMap cachedMap = cachedMaps.get(key);
+
+            if (cachedMap != null) {
+                if (cachedMap.modified.equals(modified)) {
+                    return cachedMap.mapFile;
+                }
+
+                /* The file has changed since it was loaded */
+                remove(key);
+            }
+
+            /* Join a load that is already in progress, or start a new one */
+            load = loadsInProgress.get(key);
+
+            if (load == null) {
+                load = new CompletableFuture<>();
+
+                loadsInProgress.put(key, load);
+
+                isLoadingThread = true;
+            }
+        }
+
+        if (isLoadingThread) {
+            return loadAndCache(key, modified, load);
+        }
+
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for " + key + " to load");
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Removes the map from the cache so the next request loads it again
+     *
+     * @param mapPath
+     */
+    public synchronized void invalidate(Path mapPath) {
+        remove(mapPath.toAbsolutePath().normalize());
+    }
+
+    public synchronized void clear() {
+        cachedMaps.clear();
+
+        sizeInBytes = 0;
+    }
+
+    /**
+     * Returns the estimated size of all cached maps
+     *
+     * @return
+     */
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public synchronized int getNumberOfCachedMaps() {
+        return cachedMaps.size();
+    }
+
+    /**
+     * Returns how many times a map has been loaded from file, i.e. the number of requests that were not served from
+     * the cache or by waiting for another request
+     *
+     * @return
+     */
+    public synchronized int getNumberOfLoads() {
+        return numberOfLoads;
+    }
+
+    private MapFile loadAndCache(Path key, FileTime modified, CompletableFuture<MapFile> load) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        MapFile mapFile;
+
+        /* Catch everything, including errors such as running out of memory, so that threads waiting for the load
+           are never left waiting for a load that will not complete */
+        try (InputStream inputStream = Files.newInputStream(key)) {
+            mapFile = mapLoader.loadMapFromStream(inputStream);
+
+            synchronized (this) {
+                numberOfLoads = numberOfLoads + 1;
+
+                put(key, new CachedMap(mapFile, modified, mapFile.estimateSizeInBytes()));
+            }
+        } catch (Throwable e) {
+            load.completeExceptionally(e);
+
+            throw rethrow(e);
+        } finally {
+            synchronized (this) {
+                loadsInProgress.remove(key);
+            }
+        }
+
+        load.complete(mapFile);
+
+        return mapFile;
+    }
+
+    private void put(Path key, CachedMap cachedMap) {
+
+        /* Don't cache maps that would push out everything else and still not fit */
+        if (cachedMap.sizeInBytes > maxSizeInBytes) {
+            return;
+        }
+
+        remove(key);
+
+        cachedMaps.put(key, cachedMap);
+
+        sizeInBytes = sizeInBytes + cachedMap.sizeInBytes;
+
+        /* Evict the least recently used maps until the cache is within its bound */
+        Iterator<CachedMap> iterator = cachedMaps.values().iterator();
+
+        while (sizeInBytes > maxSizeInBytes && iterator.hasNext()) {
+            CachedMap leastRecentlyUsed = iterator.next();
+
+            iterator.remove();
+
+            sizeInBytes = sizeInBytes - leastRecentlyUsed.sizeInBytes;
+        }
+    }
+
+    private void remove(Path key) {
+        CachedMap removed = cachedMaps.remove(key);
+
+        if (removed != null) {
+            sizeInBytes = sizeInBytes - removed.sizeInBytes;
+        }
+    }
+
+    /**
+     * Returns the failure as it would have been thrown when loading the map directly, so it can be thrown
+     */
+    private static SettlersMapLoadingException rethrow(Throwable failure) throws IOException, InvalidMapException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof InvalidMapException) {
+            throw (InvalidMapException) failure;
+        } else if (failure instanceof SettlersMapLoadingException) {
+            return (SettlersMapLoadingException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+
+        throw new RuntimeException(failure);
+    }
+
+    private static class CachedMap {
+        private final MapFile mapFile;
+        private final FileTime modified;
+        private final long sizeInBytes;
+
+        private CachedMap(MapFile mapFile, FileTime modified, long sizeInBytes) {
+            this.mapFile = mapFile;
+            this.modified = modified;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+}
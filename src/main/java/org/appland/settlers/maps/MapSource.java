@@ -0,0 +1,43 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Something a single map can be loaded from, e.g. a map file or an entry in an archive
+ *
+ */
+interface MapSource {
+
+    String getName();
+
+    /**
+     * Returns the number of bytes of map data
+     *
+     * @return
+     * @throws IOException
+     */
+    long getSize() throws IOException;
+
+    MapFile load(MapLoader mapLoader) throws SettlersMapLoadingException, IOException, InvalidMapException;
+
+    static MapSource fromPath(Path path) {
+        return new MapSource() {
+            @Override
+            public String getName() {
+                return path.toString();
+            }
+
+            @Override
+            public long getSize() throws IOException {
+                return Files.size(path);
+            }
+
+            @Override
+            public MapFile load(MapLoader mapLoader) throws SettlersMapLoadingException, IOException, InvalidMapException {
+                return mapLoader.loadMapFromPath(path);
+            }
+        };
+    }
+}
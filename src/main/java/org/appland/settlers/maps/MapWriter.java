@@ -0,0 +1,432 @@
+package org.appland.settlers.maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes a map in the original SWD/WLD format that MapLoader reads.
+ *
+ * The file header and the block headers are assembled in small buffers, and each block is written from a read-only
+ * view of its plane without copying it. Everything is then written with one gathering write, so the cost is
+ * dominated by copying the planes to the file.
+ *
+ * The file header, the blocks that are not decoded into planes, e.g. roads, and the bytes after the last block are
+ * written from the views the map file retained when it was loaded, so a loaded map is written back unchanged. Only
+ * the fields of the file header that differ from the map, e.g. after the title is changed, are written over. Maps
+ * that are not loaded from a map file don't have them. They get a file header with the standard values, their
+ * blocks are written as zeros, followed by the footer.
+ *
+ */
+public class MapWriter {
+    private static final String FILE_HEADER = "WORLD_V1.0";
+    private static final int FILE_ID = 0x2711;
+    private static final int BLOCK_ID = 10000;
+    private static final int BLOCK_HEADER_SIZE = 16;
+    private static final int SHORT_TITLE_LENGTH = 20;
+    private static final int LONG_TITLE_LENGTH = 24;
+    private static final int AUTHOR_LENGTH = 20;
+    private static final int MAX_PLAYERS_IN_FILE = 7;
+    private static final int NUMBER_OF_MASSES = 250;
+    private static final int FOOTER = 0xFF;
+
+    /* Where the fields are in the file header */
+    private static final int TITLE_OFFSET = 10;
+    private static final int SHORT_TITLE_DIMENSIONS_OFFSET = TITLE_OFFSET + SHORT_TITLE_LENGTH;
+    private static final int TERRAIN_OFFSET = 34;
+    private static final int PLAYERS_OFFSET = 35;
+    private static final int AUTHOR_OFFSET = 36;
+    private static final int STARTING_X_OFFSET = 56;
+    private static final int STARTING_Y_OFFSET = STARTING_X_OFFSET + MAX_PLAYERS_IN_FILE * 2;
+    private static final int UNLIMITED_PLAY_OFFSET = 84;
+    private static final int PLAYER_FACES_OFFSET = 85;
+    private static final int MASSES_OFFSET = 92;
+    private static final int MASS_SIZE = 9;
+    private static final int DIMENSIONS_OFFSET = MapLoader.FILE_HEADER_SIZE - 4;
+
+    /**
+     * Writes the map to the file, replacing it if it exists. The map is written to a temporary file in the same folder
+     * that is then moved in place, so the map can be written back to the file it was loaded from. Maps loaded with
+     * MapLoader.loadMapFromPath are views of that file, which must not change while they are written.
+     *
+     * @param mapFile
+     * @param path
+     * @throws IOException
+     */
+    public void write(MapFile mapFile, Path path) throws IOException {
+        ByteBuffer[] buffers = toBuffers(mapFile);
+
+        long size = 0;
+
+        for (ByteBuffer buffer : buffers) {
+            size = size + buffer.remaining();
+        }
+
+        Path target = path.toAbsolutePath();
+        Path temporaryPath = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileChannel fileChannel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+
+                /* The trailing bytes may be empty so count what is written instead of checking the last buffer */
+                long written = 0;
+
+                while (written < size) {
+                    written = written + fileChannel.write(buffers);
+                }
+            }
+
+            Files.move(temporaryPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * Returns the map in the SWD/WLD format
+     *
+     * @param mapFile
+     * @return
+     */
+    public ByteBuffer writeToBuffer(MapFile mapFile) {
+        ByteBuffer[] buffers = toBuffers(mapFile);
+
+        int size = 0;
+
+        for (ByteBuffer buffer : buffers) {
+            size = size + buffer.remaining();
+        }
+
+        ByteBuffer result = ByteBuffer.allocate(size);
+
+        for (ByteBuffer buffer : buffers) {
+            result.put(buffer);
+        }
+
+        result.flip();
+
+        return result;
+    }
+
+    /**
+     * Returns the file header, followed by the header and the data of each block, and the trailing bytes
+     */
+    private ByteBuffer[] toBuffers(MapFile mapFile) {
+        int numberOfPoints = mapFile.getNumberOfPoints();
+        MapBlock[] blocks = MapBlock.values();
+
+        /* All blocks have the same header */
+        BlockHeader blockHeader = mapFile.getBlockHeader();
+
+        if (blockHeader == null ||
+            blockHeader.getWidth() != mapFile.getWidth() ||
+            blockHeader.getHeight() != mapFile.getHeight() ||
+            blockHeader.getMultiplier() * blockHeader.getBlockLength() != numberOfPoints) {
+            blockHeader = new BlockHeader(BLOCK_ID, 0, mapFile.getWidth(), mapFile.getHeight(), 1, numberOfPoints);
+        }
+
+        ByteBuffer blockHeaders = ByteBuffer.allocate(blocks.length * BLOCK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < blocks.length; i++) {
+            putBlockHeader(blockHeaders, blockHeader);
+        }
+
+        /* Blocks that are not kept share one buffer of zeros */
+        ByteBuffer zeros = null;
+
+        ByteBuffer[] buffers = new ByteBuffer[1 + blocks.length * 2 + 1];
+
+        buffers[0] = toFileHeader(mapFile);
+
+        for (int i = 0; i < blocks.length; i++) {
+            MapPlane plane = blocks[i].getPlane();
+
+            blockHeaders.position(i * BLOCK_HEADER_SIZE);
+            blockHeaders.limit((i + 1) * BLOCK_HEADER_SIZE);
+
+            buffers[1 + i * 2] = blockHeaders.slice();
+
+            ByteBuffer retainedBlock = mapFile.getRetainedBlockView(blocks[i]);
+
+            if (plane != null) {
+                buffers[2 + i * 2] = mapFile.getPlaneBuffer(plane);
+            } else if (retainedBlock != null && retainedBlock.remaining() == numberOfPoints) {
+                buffers[2 + i * 2] = retainedBlock;
+            } else {
+                if (zeros == null) {
+                    zeros = ByteBuffer.allocate(numberOfPoints).asReadOnlyBuffer();
+                }
+
+                buffers[2 + i * 2] = zeros.duplicate();
+            }
+        }
+
+        ByteBuffer trailingBytes = mapFile.getTrailingBytesView();
+
+        if (trailingBytes == null) {
+            trailingBytes = ByteBuffer.allocate(1);
+
+            trailingBytes.put((byte) FOOTER);
+            trailingBytes.flip();
+        }
+
+        buffers[buffers.length - 1] = trailingBytes;
+
+        return buffers;
+    }
+
+    /**
+     * Returns the file header the map was loaded with, with the fields that have changed since written over, or a new
+     * file header if the map was not loaded from a map file
+     */
+    private ByteBuffer toFileHeader(MapFile mapFile) {
+        ByteBuffer loadedHeader = mapFile.getFileHeaderView();
+
+        if (loadedHeader == null || loadedHeader.remaining() != MapLoader.FILE_HEADER_SIZE) {
+            return createFileHeader(mapFile);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(MapLoader.FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.put(loadedHeader);
+
+        patchFileHeader(header, mapFile);
+
+        header.clear();
+
+        return header;
+    }
+
+    /**
+     * Writes the fields that differ from the map over the header. Each field is compared as the loader decodes it, so
+     * bytes that the loader ignores, e.g. after the end of the title or the starting positions of players that are
+     * not in the map, are kept as they are.
+     */
+    private static void patchFileHeader(ByteBuffer header, MapFile mapFile) {
+
+        /* The title is followed by the width and the height if they match the ones at the end of the header */
+        int width = mapFile.getWidth();
+        int height = mapFile.getHeight();
+
+        MapTitleType loadedTitleType =
+                getUint16(header, SHORT_TITLE_DIMENSIONS_OFFSET) == getUint16(header, DIMENSIONS_OFFSET) &&
+                getUint16(header, SHORT_TITLE_DIMENSIONS_OFFSET + 2) == getUint16(header, DIMENSIONS_OFFSET + 2) ?
+                        MapTitleType.SHORT : MapTitleType.LONG;
+
+        MapTitleType titleType = mapFile.getMapTitleType() == null ? loadedTitleType : mapFile.getMapTitleType();
+        int titleLength = titleType == MapTitleType.SHORT ? SHORT_TITLE_LENGTH : LONG_TITLE_LENGTH;
+        String title = mapFile.getTitle() == null ? "" : mapFile.getTitle();
+
+        if (titleType != loadedTitleType || !title.equals(getString(header, TITLE_OFFSET, titleLength))) {
+            header.position(TITLE_OFFSET);
+
+            putString(header, title, titleLength);
+        }
+
+        if (titleType == MapTitleType.SHORT &&
+            (getUint16(header, SHORT_TITLE_DIMENSIONS_OFFSET) != width ||
+             getUint16(header, SHORT_TITLE_DIMENSIONS_OFFSET + 2) != height)) {
+            header.putShort(SHORT_TITLE_DIMENSIONS_OFFSET, (short) width);
+            header.putShort(SHORT_TITLE_DIMENSIONS_OFFSET + 2, (short) height);
+        }
+
+        if (getUint16(header, DIMENSIONS_OFFSET) != width || getUint16(header, DIMENSIONS_OFFSET + 2) != height) {
+            header.putShort(DIMENSIONS_OFFSET, (short) width);
+            header.putShort(DIMENSIONS_OFFSET + 2, (short) height);
+        }
+
+        if (TerrainType.fromUint8((short) getUint8(header, TERRAIN_OFFSET)) != mapFile.getTerrainType()) {
+            header.put(TERRAIN_OFFSET, (byte) (mapFile.getTerrainType() == null ? 0 : mapFile.getTerrainType().getId()));
+        }
+
+        if (getUint8(header, PLAYERS_OFFSET) != mapFile.getMaxNumberOfPlayers()) {
+            header.put(PLAYERS_OFFSET, (byte) mapFile.getMaxNumberOfPlayers());
+        }
+
+        String author = mapFile.getAuthor() == null ? "" : mapFile.getAuthor();
+
+        if (!author.equals(getString(header, AUTHOR_OFFSET, AUTHOR_LENGTH))) {
+            header.position(AUTHOR_OFFSET);
+
+            putString(header, author, AUTHOR_LENGTH);
+        }
+
+        List<java.awt.Point> startingPoints = mapFile.getFileStartingPoints();
+
+        for (int i = 0; i < MAX_PLAYERS_IN_FILE && i < startingPoints.size(); i++) {
+            java.awt.Point startingPoint = startingPoints.get(i);
+
+            if (getUint16(header, STARTING_X_OFFSET + i * 2) != startingPoint.x ||
+                getUint16(header, STARTING_Y_OFFSET + i * 2) != startingPoint.y) {
+                header.putShort(STARTING_X_OFFSET + i * 2, (short) startingPoint.x);
+                header.putShort(STARTING_Y_OFFSET + i * 2, (short) startingPoint.y);
+            }
+        }
+
+        /* Zero means unlimited play, and any other value that it's limited */
+        if ((getUint8(header, UNLIMITED_PLAY_OFFSET) == 0) != mapFile.isPlayUnlimited()) {
+            header.put(UNLIMITED_PLAY_OFFSET, (byte) (mapFile.isPlayUnlimited() ? 0 : 1));
+        }
+
+        List<PlayerFace> playerFaces = mapFile.getPlayerFaces();
+
+        for (int i = 0; i < MAX_PLAYERS_IN_FILE && i < playerFaces.size(); i++) {
+            PlayerFace playerFace = playerFaces.get(i);
+
+            if (PlayerFace.playerFaceFromShort((short) getUint8(header, PLAYER_FACES_OFFSET + i)) != playerFace) {
+                header.put(PLAYER_FACES_OFFSET + i, (byte) (playerFace == null ? 0 : playerFace.getId()));
+            }
+        }
+
+        List<UniqueMass> masses = mapFile.getMasses();
+
+        for (int i = 0; i < NUMBER_OF_MASSES && i < masses.size(); i++) {
+            UniqueMass mass = masses.get(i);
+            int offset = MASSES_OFFSET + i * MASS_SIZE;
+
+            if (MassType.massTypeFromInt(getUint8(header, offset)) != mass.type ||
+                getUint16(header, offset + 1) != mass.position.x ||
+                getUint16(header, offset + 3) != mass.position.y ||
+                (header.getInt(offset + 5) & 0xffffffffL) != mass.totalMass) {
+                header.position(offset);
+
+                putMass(header, mass);
+            }
+        }
+    }
+
+    private ByteBuffer createFileHeader(MapFile mapFile) {
+        ByteBuffer header = ByteBuffer.allocate(MapLoader.FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        putString(header, FILE_HEADER, FILE_HEADER.length());
+
+        /* The title is either 20 bytes followed by the width and the height, or 24 bytes */
+        MapTitleType titleType = mapFile.getMapTitleType();
+        String title = mapFile.getTitle() == null ? "" : mapFile.getTitle();
+
+        if (titleType == null) {
+            titleType = title.length() > SHORT_TITLE_LENGTH ? MapTitleType.LONG : MapTitleType.SHORT;
+        }
+
+        if (titleType == MapTitleType.SHORT) {
+            putString(header, title, SHORT_TITLE_LENGTH);
+
+            header.putShort((short) mapFile.getWidth());
+            header.putShort((short) mapFile.getHeight());
+        } else {
+            putString(header, title, LONG_TITLE_LENGTH);
+        }
+
+        header.put((byte) (mapFile.getTerrainType() == null ? 0 : mapFile.getTerrainType().getId()));
+        header.put((byte) mapFile.getMaxNumberOfPlayers());
+
+        putString(header, mapFile.getAuthor() == null ? "" : mapFile.getAuthor(), AUTHOR_LENGTH);
+
+        /* The x coordinates of all starting positions come before the y coordinates */
+        List<java.awt.Point> startingPoints = mapFile.getFileStartingPoints();
+
+        for (int i = 0; i < MAX_PLAYERS_IN_FILE; i++) {
+            header.putShort((short) (i < startingPoints.size() ? startingPoints.get(i).x : 0));
+        }
+
+        for (int i = 0; i < MAX_PLAYERS_IN_FILE; i++) {
+            header.putShort((short) (i < startingPoints.size() ? startingPoints.get(i).y : 0));
+        }
+
+        header.put((byte) (mapFile.isPlayUnlimited() ? 0 : 1));
+
+        List<PlayerFace> playerFaces = mapFile.getPlayerFaces();
+
+        for (int i = 0; i < MAX_PLAYERS_IN_FILE; i++) {
+            PlayerFace playerFace = i < playerFaces.size() ? playerFaces.get(i) : null;
+
+            header.put((byte) (playerFace == null ? 0 : playerFace.getId()));
+        }
+
+        List<UniqueMass> masses = mapFile.getMasses();
+
+        for (int i = 0; i < NUMBER_OF_MASSES; i++) {
+            UniqueMass mass = i < masses.size() ? masses.get(i) : null;
+
+            if (mass == null) {
+                header.put(new byte[9]);
+
+                continue;
+            }
+
+            putMass(header, mass);
+        }
+
+        header.putShort((short) FILE_ID);
+        header.putInt(0);
+        header.putShort((short) mapFile.getWidth());
+        header.putShort((short) mapFile.getHeight());
+
+        header.flip();
+
+        return header;
+    }
+
+    private static void putMass(ByteBuffer buffer, UniqueMass mass) {
+        buffer.put((byte) (mass.type == null ? 0 : mass.type.getId()));
+        buffer.putShort((short) mass.position.x);
+        buffer.putShort((short) mass.position.y);
+        buffer.putInt((int) mass.totalMass);
+    }
+
+    private static void putBlockHeader(ByteBuffer buffer, BlockHeader blockHeader) {
+        buffer.putShort((short) blockHeader.getId());
+        buffer.putInt((int) blockHeader.getMustBeZero());
+        buffer.putShort((short) blockHeader.getWidth());
+        buffer.putShort((short) blockHeader.getHeight());
+        buffer.putShort((short) blockHeader.getMultiplier());
+        buffer.putInt((int) blockHeader.getBlockLength());
+    }
+
+    private static int getUint8(ByteBuffer buffer, int index) {
+        return buffer.get(index) & 0xff;
+    }
+
+    private static int getUint16(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xffff;
+    }
+
+    /**
+     * Returns the string in a field of fixed length up to the first zero, the same way the loader reads it
+     */
+    private static String getString(ByteBuffer buffer, int index, int length) {
+        int end = index;
+
+        while (end < index + length && buffer.get(end) != 0) {
+            end = end + 1;
+        }
+
+        byte[] bytes = new byte[end - index];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(index + i);
+        }
+
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Puts the string in a field of fixed length, padded with zeros. Longer strings are cut off.
+     */
+    private static void putString(ByteBuffer buffer, String string, int length) {
+        byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+
+        buffer.put(bytes, 0, Math.min(bytes.length, length));
+
+        for (int i = bytes.length; i < length; i++) {
+            buffer.put((byte) 0);
+        }
+    }
+}
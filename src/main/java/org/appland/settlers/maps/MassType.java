@@ -20,6 +20,10 @@ public enum MassType {
         this.id = id;
     }
 
+    int getId() {
+        return id;
+    }
+
     public static MassType massTypeFromInt(int type) {
 
         switch (type) {
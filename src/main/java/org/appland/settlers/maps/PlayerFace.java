@@ -29,6 +29,10 @@ public enum PlayerFace {
         this.id = id;
     }
 
+    int getId() {
+        return id;
+    }
+
     static PlayerFace playerFaceFromShort(short s) {
         switch(s) {
             case 0:
@@ -6,6 +6,8 @@
 package org.appland.settlers.maps;
 
 /**
+ * A resource and its amount. Instances are immutable, and the ones decoded from map files are shared so decoding
+ * doesn't allocate.
  *
  * @author johan
  */
@@ -14,6 +16,16 @@ class Resource {
     private static final int IRON_OFFSET = 72; // 0x48
     private static final int GOLD_OFFSET = 80; // 0x50
     private static final int GRANITE_OFFSET = 88; // 0x58
+    private static final int WATER_VALUE = 33; // 0x21
+    private static final int FISH_VALUE = 135; // 0x87
+
+    private static final Resource[] RESOURCES_BY_UINT8 = new Resource[256];
+
+    static {
+        for (int i = 0; i < RESOURCES_BY_UINT8.length; i++) {
+            RESOURCES_BY_UINT8[i] = decodeResource(i);
+        }
+    }
 
     final ResourceType type;
     final int amount;
@@ -24,6 +36,14 @@ class Resource {
     }
 
     public static Resource resourceFromInt(int i) {
+        if (i < 0 || i >= RESOURCES_BY_UINT8.length) {
+            return null;
+        }
+
+        return RESOURCES_BY_UINT8[i];
+    }
+
+    private static Resource decodeResource(int i) {
         ResourceType type = ResourceType.resourceTypeFromInt(i);
 
         int amount = 0;
@@ -51,4 +71,28 @@ class Resource {
 
         return new Resource(type, amount);
     }
+
+    /**
+     * Returns the value used to represent the resource in the map file
+     *
+     * @return
+     */
+    public int getValue() {
+        switch (type) {
+            case WATER:
+                return WATER_VALUE;
+            case FISH:
+                return FISH_VALUE;
+            case COAL:
+                return COAL_OFFSET + amount;
+            case IRON_ORE:
+                return IRON_OFFSET + amount;
+            case GOLD:
+                return GOLD_OFFSET + amount;
+            case GRANITE:
+                return GRANITE_OFFSET + amount;
+            default:
+                return 0;
+        }
+    }
 }
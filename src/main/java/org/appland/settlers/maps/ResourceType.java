@@ -19,7 +19,23 @@ public enum ResourceType {
     GOLD,
     GRANITE;
 
+    private static final ResourceType[] RESOURCE_TYPES_BY_UINT8 = new ResourceType[256];
+
+    static {
+        for (int i = 0; i < RESOURCE_TYPES_BY_UINT8.length; i++) {
+            RESOURCE_TYPES_BY_UINT8[i] = resourceTypeFromId(i);
+        }
+    }
+
     public static ResourceType resourceTypeFromInt(int type) {
+        if (type < 0 || type >= RESOURCE_TYPES_BY_UINT8.length) {
+            return null;
+        }
+
+        return RESOURCE_TYPES_BY_UINT8[type];
+    }
+
+    private static ResourceType resourceTypeFromId(int type) {
         if (type == 33) { // 0x20, 0x21 -- 32-33
             return WATER;
         } else if (type == 135) { // > 0x80, < 0x90 -- 128-144
@@ -0,0 +1,127 @@
+package org.appland.settlers.maps;
+
+import java.util.stream.IntStream;
+
+/**
+ * Calculates the gouraud shading of each point from the heights, for maps where the shading block is missing or no
+ * longer matches the heights, e.g. after the heights have been edited.
+ *
+ * The shading is 64 on flat ground. It gets brighter where the ground rises towards the upper right and darker where
+ * it rises towards the upper left, left and lower left, using weights like the ones of the original game over the
+ * direct neighbours, and is clamped to 0 - 128. Neighbours outside the map count as being at the same height, like
+ * in MapFile's table of neighbours.
+ *
+ * The rows are calculated in parallel. Within a row the neighbours are at fixed offsets from each point, so the loop
+ * over the inner points of a row has no branches or lookups and can be vectorized by the JIT.
+ *
+ */
+final class Shading {
+    static final int FLAT = 64;
+    static final int MAX = 128;
+
+    private static final int UP_RIGHT_WEIGHT = 9;
+    private static final int UP_LEFT_WEIGHT = -3;
+    private static final int LEFT_WEIGHT = -6;
+    private static final int DOWN_LEFT_WEIGHT = -9;
+
+    private Shading() { }
+
+    /**
+     * Calculates the shading of each point. The points are stored row by row, with the given number of points per
+     * row, and firstX holds the game x coordinate of the first point in each row.
+     *
+     * @param heights
+     * @param shading
+     * @param width
+     * @param firstX
+     */
+    static void calculate(byte[] heights, byte[] shading, int width, int[] firstX) {
+        IntStream.range(0, firstX.length).parallel().forEach(row -> calculateRow(heights, shading, width, firstX, row));
+    }
+
+    private static void calculateRow(byte[] heights, byte[] shading, int width, int[] firstX, int row) {
+        int rows = firstX.length;
+        int start = row * width;
+
+        if (row == 0 || row == rows - 1 || width < 3 ||
+            !areAdjacent(firstX, row, row - 1) || !areAdjacent(firstX, row, row + 1)) {
+            for (int column = 0; column < width; column++) {
+                shading[start + column] = (byte) shadePoint(heights, width, firstX, row, column);
+            }
+
+            return;
+        }
+
+        /* The index of the up left and down left neighbours of the point in column 0, which may be in the column
+           before it */
+        int upLeft = (row - 1) * width + (firstX[row] - 1 - firstX[row - 1]) / 2;
+        int downLeft = (row + 1) * width + (firstX[row] - 1 - firstX[row + 1]) / 2;
+
+        shading[start] = (byte) shadePoint(heights, width, firstX, row, 0);
+
+        for (int column = 1; column < width - 1; column++) {
+            int index = start + column;
+            int height = heights[index] & 0xff;
+
+            int value = FLAT +
+                    UP_RIGHT_WEIGHT * ((heights[upLeft + column + 1] & 0xff) - height) +
+                    UP_LEFT_WEIGHT * ((heights[upLeft + column] & 0xff) - height) +
+                    LEFT_WEIGHT * ((heights[index - 1] & 0xff) - height) +
+                    DOWN_LEFT_WEIGHT * ((heights[downLeft + column] & 0xff) - height);
+
+            shading[index] = (byte) Math.max(0, Math.min(MAX, value));
+        }
+
+        shading[start + width - 1] = (byte) shadePoint(heights, width, firstX, row, width - 1);
+    }
+
+    /**
+     * Calculates the shading of a single point, checking that each neighbour is on the map
+     */
+    private static int shadePoint(byte[] heights, int width, int[] firstX, int row, int column) {
+        int rows = firstX.length;
+        int height = heights[row * width + column] & 0xff;
+
+        int upRight = height;
+        int upLeft = height;
+        int left = heightAt(heights, width, row, column - 1, height);
+        int downLeft = height;
+
+        if (row > 0 && areAdjacent(firstX, row, row - 1)) {
+            int upLeftColumn = column + (firstX[row] - 1 - firstX[row - 1]) / 2;
+
+            upLeft = heightAt(heights, width, row - 1, upLeftColumn, height);
+            upRight = heightAt(heights, width, row - 1, upLeftColumn + 1, height);
+        }
+
+        if (row < rows - 1 && areAdjacent(firstX, row, row + 1)) {
+            int downLeftColumn = column + (firstX[row] - 1 - firstX[row + 1]) / 2;
+
+            downLeft = heightAt(heights, width, row + 1, downLeftColumn, height);
+        }
+
+        int value = FLAT +
+                UP_RIGHT_WEIGHT * (upRight - height) +
+                UP_LEFT_WEIGHT * (upLeft - height) +
+                LEFT_WEIGHT * (left - height) +
+                DOWN_LEFT_WEIGHT * (downLeft - height);
+
+        return Math.max(0, Math.min(MAX, value));
+    }
+
+    /**
+     * Returns true if the points of the rows are offset by one, as the rows of the map normally are. On maps with an
+     * odd height the first two rows start at the same x, so the points of the first row have no neighbours below.
+     */
+    private static boolean areAdjacent(int[] firstX, int row, int otherRow) {
+        return Math.abs(firstX[row] - firstX[otherRow]) == 1;
+    }
+
+    private static int heightAt(byte[] heights, int width, int row, int column, int outside) {
+        if (column < 0 || column >= width) {
+            return outside;
+        }
+
+        return heights[row * width + column] & 0xff;
+    }
+}
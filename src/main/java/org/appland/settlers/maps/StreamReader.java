@@ -1,21 +1,35 @@
 package org.appland.settlers.maps;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Stack;
 
-public class StreamReader {
+/**
+ * Reads primitives from an input stream. Bytes are read from the stream in large chunks into an internal buffer that
+ * is reused for the life of the reader, so reading single values, bulk reading into caller provided arrays and
+ * skipping don't allocate.
+ *
+ */
+public class StreamReader implements BinaryReader {
+    private static final int BUFFER_SIZE = 8192;
+
     private final InputStream inputStream;
     private final Stack<ByteOrder> byteOrderStack;
+    private final byte[] buffer;
+    private final ByteBuffer bufferView;
 
     private ByteOrder order;
     private long offset;
     private boolean isEof;
+    private int bufferPosition;
+    private int bufferLimit;
 
     public StreamReader(InputStream inputStream, ByteOrder byteOrder) {
         this.inputStream = inputStream;
@@ -24,69 +38,65 @@ public class StreamReader {
         byteOrderStack = new Stack<>();
         offset = 0;
         isEof = false;
+
+        buffer = new byte[BUFFER_SIZE];
+        bufferView = ByteBuffer.wrap(buffer).order(byteOrder);
+        bufferPosition = 0;
+        bufferLimit = 0;
     }
 
     public int getUint16() throws IOException {
-        byte[] bytes = new byte[2];
-
-        int result = inputStream.read(bytes, 0, 2);
-
-        if (result == -1) {
-            isEof = true;
-        }
-
-        offset = offset + 2;
-
-        return (ByteBuffer.wrap(bytes).order(this.order).getShort() & 0xffff);
+        return getInt16() & 0xffff;
     }
 
     public void read(byte[] buffer, int offset, int length) throws IOException {
-        int result = inputStream.read(buffer, offset, length);
-
-        if (result == -1) {
-            isEof = true;
-        }
+        readIntoArray(buffer, offset, length);
 
         this.offset = this.offset + length;
     }
 
-    public short[] getUint8Array(int lengthInBytes) throws IOException {
-        byte[] bytes = new byte[lengthInBytes];
-
-        int result = inputStream.read(bytes, 0, lengthInBytes);
+    /**
+     * Fills the given array with the next bytes from the stream. This is typically used to read a full block of
+     * uint8 values, one per point on the map, in one go.
+     *
+     * @param destination
+     * @throws IOException
+     */
+    public void readUint8Plane(byte[] destination) throws IOException {
+        read(destination, 0, destination.length);
+    }
 
-        if (result == -1) {
-            isEof = true;
+    /**
+     * Fills the given array with the next uint16 values from the stream
+     *
+     * @param destination
+     * @throws IOException
+     */
+    public void readUint16Array(int[] destination) throws IOException {
+        for (int i = 0; i < destination.length; i++) {
+            destination[i] = getUint16();
         }
+    }
+
+    public short[] getUint8Array(int lengthInBytes) throws IOException {
+        byte[] bytes = getUint8ArrayAsBytes(lengthInBytes);
 
         short[] shorts = new short[lengthInBytes];
 
         for (int i = 0; i < bytes.length; i++) {
-            shorts[i] = (short)(ByteBuffer.wrap(bytes).order(order).get() & 0xff);
+            shorts[i] = (short)(bytes[i] & 0xff);
         }
 
-        offset = offset + lengthInBytes;
-
         return shorts;
     }
 
     public long[] getUint32Array(int length) throws IOException {
-        byte[] bytes = new byte[length * 4];
-
-        int result = inputStream.read(bytes, 0, length * 4);
-
-        if (result == -1) {
-            isEof = true;
-        }
-
         long[] longArray = new long[length];
 
-        for (int i = 0; i < bytes.length; i++) {
-            longArray[i] = ((long)ByteBuffer.wrap(bytes).order(order).getInt(i * 4) & 0xffffffffL);
+        for (int i = 0; i < length; i++) {
+            longArray[i] = getUint32();
         }
 
-        offset = offset + length * 4L;
-
         return longArray;
     }
 
@@ -103,27 +113,11 @@ public class StreamReader {
     }
 
     public long getUint32() throws IOException {
-        byte[] bytes = new byte[4];
-
-        int result = inputStream.read(bytes, 0, 4);
-
-        if (result == -1) {
-            isEof = true;
-        }
-
-        offset = offset + 4;
-
-        return ((long) ByteBuffer.wrap(bytes).order(order).getInt() & 0xffffffffL);
+        return getInt32() & 0xffffffffL;
     }
 
     public char[] getUint8ArrayAsChar(int lengthInBytes) throws IOException {
-        byte[] bytes = new byte[lengthInBytes];
-
-        int result = inputStream.read(bytes, 0, lengthInBytes);
-
-        if (result == -1) {
-            isEof = true;
-        }
+        byte[] bytes = getUint8ArrayAsBytes(lengthInBytes);
 
         char[] chars = new char[lengthInBytes];
 
@@ -131,8 +125,6 @@ public class StreamReader {
             chars[i] = (char)(ByteBuffer.wrap(bytes).order(order).getShort(i) & 0xffff);
         }
 
-        offset = offset + lengthInBytes;
-
         return chars;
     }
 
@@ -140,152 +132,136 @@ public class StreamReader {
         this.byteOrderStack.push(this.order);
 
         this.order = order;
+
+        bufferView.order(order);
     }
 
     public short getInt16() throws IOException {
-        byte[] bytes = new byte[2];
+        ensureBuffered(2);
 
-        int result = this.inputStream.read(bytes, 0, 2);
+        short value = bufferView.getShort(bufferPosition);
 
-        if (result == -1) {
-            isEof = true;
-        }
-
-        offset = offset + 2;
+        consume(2);
 
-        return ByteBuffer.wrap(bytes).order(this.order).getShort();
+        return value;
     }
 
     public void popByteOrder() {
         this.order = this.byteOrderStack.pop();
+
+        bufferView.order(this.order);
     }
 
+    /**
+     * Returns the underlying stream. Note that the reader reads ahead, so the stream is typically positioned after
+     * the bytes that have been read through the reader.
+     *
+     * @return
+     */
     public InputStream getInputStream() {
         return this.inputStream;
     }
 
     public void skip(int i) throws IOException {
-        long skipped = inputStream.skip(i);
+        long remaining = i;
 
-        if (skipped < i) {
-            isEof = true;
-        }
+        while (remaining > 0) {
+            if (bufferPosition == bufferLimit && !fillBuffer()) {
+                isEof = true;
 
-        if (skipped > -1) {
+                break;
+            }
+
+            int skipped = (int) Math.min(remaining, bufferLimit - bufferPosition);
+
+            bufferPosition = bufferPosition + skipped;
             offset = offset + skipped;
+            remaining = remaining - skipped;
         }
     }
 
     public short getUint8() throws IOException {
-        byte[] bytes = new byte[1];
-
-        int result = inputStream.read(bytes, 0, 1);
-
-        if (result == -1) {
-            isEof = true;
-        }
+        return (short)(getInt8() & 0xff);
+    }
 
-        offset = offset + 1;
+    public String getUint8ArrayAsString(int i) throws IOException {
+        byte[] bytes = getUint8ArrayAsBytes(i);
 
-        return (short)(ByteBuffer.wrap(bytes).order(order).get() & (short)0xff);
+        return new String(bytes, StandardCharsets.US_ASCII);
     }
 
-    public String getUint8ArrayAsString(int i) throws IOException {
-        byte[] bytes = new byte[i];
+    public byte[] getRemainingBytes() throws IOException {
+        isEof = true;
 
-        int result = inputStream.read(bytes, 0, i);
+        ByteArrayOutputStream remaining = new ByteArrayOutputStream();
 
-        if (result == -1) {
-            isEof = true;
-        }
+        remaining.write(buffer, bufferPosition, bufferLimit - bufferPosition);
+        remaining.write(inputStream.readAllBytes());
 
-        String string = new String(bytes, StandardCharsets.US_ASCII);
+        bufferPosition = bufferLimit;
 
-        offset = offset + i;
+        return remaining.toByteArray();
+    }
 
-        return string;
+    /**
+     * Returns the next bytes as a read-only buffer. They are copied since the stream can't be viewed in place.
+     *
+     * @param length
+     * @return
+     * @throws IOException
+     */
+    public ByteBuffer getUint8ArrayAsBuffer(int length) throws IOException {
+        return ByteBuffer.wrap(getUint8ArrayAsBytes(length)).asReadOnlyBuffer();
     }
 
-    public byte[] getRemainingBytes() throws IOException {
-        isEof = true;
+    public ByteBuffer getRemainingAsBuffer() throws IOException {
+        byte[] bytes = getRemainingBytes();
+
+        offset = offset + bytes.length;
 
-        return inputStream.readAllBytes();
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
     }
 
     public byte[] getUint8ArrayAsBytes(int length) throws IOException {
         byte[] bytes = new byte[length];
 
-        int result = inputStream.read(bytes, 0, length);
-
-        if (result == -1) {
-            isEof = true;
-        }
-
-        offset = offset + length;
+        read(bytes, 0, length);
 
         return bytes;
     }
 
     public int[] getUint16ArrayAsInts(int length) throws IOException {
-        byte[] bytes = new byte[length * 2];
-
         int[] intArray = new int[length];
 
-        int result = inputStream.read(bytes, 0, length * 2);
-
-        if (result == -1) {
-            isEof = true;
-        }
-
-        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes).order(this.order);
-
-        for (int i = 0; i < length; i++) {
-            intArray[i] = (byteBuffer.getShort(i * 2) & 0xffff);
-        }
-
-        offset = offset + length * 2L;
+        readUint16Array(intArray);
 
         return intArray;
     }
 
     public int getInt32() throws IOException {
-        byte[] bytes = new byte[4];
+        ensureBuffered(4);
 
-        int result = inputStream.read(bytes, 0, 4);
+        int value = bufferView.getInt(bufferPosition);
 
-        if (result == -1) {
-            isEof = true;
-        }
+        consume(4);
 
-        offset = offset + 4;
-
-        return ByteBuffer.wrap(bytes).order(this.order).getInt();
+        return value;
     }
 
     public void setPosition(long pixelOffset) throws IOException {
-        long skipped = inputStream.skip(pixelOffset - offset);
-
-        if (skipped < pixelOffset - offset) {
-            isEof = true;
-        }
-
-        if (skipped > 0) {
-            offset = offset + skipped;
+        if (pixelOffset > offset) {
+            skip((int) (pixelOffset - offset));
         }
     }
 
     public byte getInt8() throws IOException {
-        byte[] b = new byte[1];
+        ensureBuffered(1);
 
-        int result = inputStream.read(b, 0, 1);
+        byte value = buffer[bufferPosition];
 
-        if (result == -1) {
-            isEof = true;
-        }
-
-        offset = offset + 1;
+        consume(1);
 
-        return b[0];
+        return value;
     }
 
     public boolean isEof() {
@@ -293,9 +269,7 @@ public class StreamReader {
     }
 
     public String getRemainingBytesAsString() throws IOException {
-        isEof = true;
-
-        byte[] bytes = inputStream.readAllBytes();
+        byte[] bytes = getRemainingBytes();
 
         String string = new String(bytes, StandardCharsets.US_ASCII);
 
@@ -305,15 +279,7 @@ public class StreamReader {
     }
 
     public String getUint8ArrayAsNullTerminatedString(int length) throws IOException {
-        byte[] bytes = new byte[length];
-
-        int result = inputStream.read(bytes, 0, length);
-
-        if (result == -1) {
-            isEof = true;
-        }
-
-        offset = offset + length;
+        byte[] bytes = getUint8ArrayAsBytes(length);
 
         /* Find the null termination byte if there is one */
         int indexOfZero = -1;
@@ -331,16 +297,98 @@ public class StreamReader {
     }
 
     public ByteArray getUint8ArrayAsByteArray(int length) throws IOException {
-        byte[] bytes = new byte[length];
+        byte[] bytes = getUint8ArrayAsBytes(length);
+
+        return new ByteArray(bytes, this.order);
+    }
+
+    /**
+     * Copies the next bytes to the destination. Large reads bypass the internal buffer. Bytes missing at the end of
+     * the stream are set to zero.
+     */
+    private void readIntoArray(byte[] destination, int destinationOffset, int length) throws IOException {
+        int buffered = Math.min(length, bufferLimit - bufferPosition);
+
+        System.arraycopy(buffer, bufferPosition, destination, destinationOffset, buffered);
 
-        int result = inputStream.read(bytes, 0, length);
+        bufferPosition = bufferPosition + buffered;
+
+        int copied = buffered;
+
+        if (length - copied >= BUFFER_SIZE) {
+            copied = copied + inputStream.readNBytes(destination, destinationOffset + copied, length - copied);
+        }
+
+        while (copied < length) {
+            if (!fillBuffer()) {
+                isEof = true;
+
+                Arrays.fill(destination, destinationOffset + copied, destinationOffset + length, (byte) 0);
+
+                break;
+            }
+
+            int chunk = Math.min(length - copied, bufferLimit - bufferPosition);
+
+            System.arraycopy(buffer, bufferPosition, destination, destinationOffset + copied, chunk);
+
+            bufferPosition = bufferPosition + chunk;
+            copied = copied + chunk;
+        }
+    }
+
+    /**
+     * Makes sure that at least the given number of bytes are available in the internal buffer. Bytes missing at the
+     * end of the stream are set to zero.
+     */
+    private void ensureBuffered(int length) throws IOException {
+        if (bufferLimit - bufferPosition >= length) {
+            return;
+        }
+
+        /* Move the remaining bytes to the start of the buffer */
+        int remaining = bufferLimit - bufferPosition;
+
+        System.arraycopy(buffer, bufferPosition, buffer, 0, remaining);
+
+        bufferPosition = 0;
+        bufferLimit = remaining;
+
+        while (bufferLimit < length) {
+            int result = inputStream.read(buffer, bufferLimit, BUFFER_SIZE - bufferLimit);
+
+            if (result == -1) {
+                isEof = true;
+
+                Arrays.fill(buffer, bufferLimit, length, (byte) 0);
+
+                bufferLimit = length;
+
+                break;
+            }
+
+            bufferLimit = bufferLimit + result;
+        }
+    }
+
+    private boolean fillBuffer() throws IOException {
+        int result = inputStream.read(buffer, 0, BUFFER_SIZE);
 
         if (result == -1) {
-            isEof = true;
+            bufferPosition = 0;
+            bufferLimit = 0;
+
+            return false;
         }
 
-        offset = offset + length;
+        bufferPosition = 0;
+        bufferLimit = result;
 
-        return new ByteArray(bytes, this.order);
+        return true;
+    }
+
+    private void consume(int length) {
+        bufferPosition = bufferPosition + length;
+        offset = offset + length;
     }
 }
@@ -20,6 +20,10 @@ public enum TerrainType {
         this.id = id;
     }
 
+    int getId() {
+        return id;
+    }
+
     static TerrainType fromUint8(short b) {
         for (TerrainType value : TerrainType.values()) {
             if (value.id == (int)b) {
@@ -35,18 +35,32 @@ public enum Texture {                 // Build road   Build    Crops     Mine
     LAVA_4(22),                    //    -           -         -        -           -
     BUILDABLE_MOUNTAIN(23);        //    X           X         -        -           -
 
+    private static final Texture[] TEXTURES_BY_UINT8 = new Texture[256];
+
+    static {
+        for (int i = 0; i < TEXTURES_BY_UINT8.length; i++) {
+            TEXTURES_BY_UINT8[i] = textureFromId(i & 0x3F);
+        }
+    }
+
     private final int id;
 
     Texture(int id) {
         this.id = id;
     }
 
+    public int getValue() {
+        return id;
+    }
+
     public static Texture textureFromUint8(int textureUint8) {
 
         // Should only consider the lower six bits, i.e. & 0x3F. 0x40 marks harbour, and 0x80 is unknown
 
-        int i = textureUint8 & 0x3F;
+        return TEXTURES_BY_UINT8[textureUint8 & 0xFF];
+    }
 
+    private static Texture textureFromId(int i) {
         switch (i) {
             case 0:
                 return SAVANNAH;
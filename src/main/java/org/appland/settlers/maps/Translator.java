@@ -104,4 +104,16 @@ public class Translator {
         DEFAULT_OBJECT_PROPERTY_TO_DECORATION_MAP.put(0x37, null);
         DEFAULT_OBJECT_PROPERTY_TO_DECORATION_MAP.put(0x38, null);
     }
+
+    private static final DecorationType[] DEFAULT_DECORATIONS = TreeTranslator.toTable(DEFAULT_OBJECT_PROPERTY_TO_DECORATION_MAP, new DecorationType[256]);
+
+    /**
+     * Returns the decorations indexed by the object properties in the map file. Only the decorations of greenland are
+     * known, so they are used for all terrain types.
+     *
+     * @return
+     */
+    static DecorationType[] decorations() {
+        return DEFAULT_DECORATIONS;
+    }
 }
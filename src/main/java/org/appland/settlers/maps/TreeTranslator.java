@@ -31,4 +31,34 @@ public class TreeTranslator {
         TREE_SIZE_MAP.put(2, TreeSize.MEDIUM);
         TREE_SIZE_MAP.put(3, TreeSize.FULL_GROWN);
     }
+
+    private static final Tree.TreeType[] DEFAULT_TREE_TYPES = toTable(DEFAULT_ID_TO_TREE_TYPE_MAP, new Tree.TreeType[256]);
+    private static final TreeSize[] TREE_SIZES = toTable(TREE_SIZE_MAP, new TreeSize[256]);
+
+    /**
+     * Returns the tree types indexed by the id of the tree type in the map file. Only the tree types of greenland are
+     * known, so they are used for all terrain types.
+     *
+     * @return
+     */
+    static Tree.TreeType[] treeTypes() {
+        return DEFAULT_TREE_TYPES;
+    }
+
+    /**
+     * Returns the tree sizes indexed by the size in the map file
+     *
+     * @return
+     */
+    static TreeSize[] treeSizes() {
+        return TREE_SIZES;
+    }
+
+    static <T> T[] toTable(Map<Integer, T> map, T[] table) {
+        for (Map.Entry<Integer, T> entry : map.entrySet()) {
+            table[entry.getKey()] = entry.getValue();
+        }
+
+        return table;
+    }
 }
@@ -0,0 +1,73 @@
+package org.appland.settlers.maps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncMapReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAsyncLoadIsTheSameAsAStreamedMap() throws Exception, InvalidMapException {
+        byte[] data = TestMaps.createMap(256, 256, 1);
+        Path mapPath = writeMap(data);
+
+        MapFile mapFile = TestMaps.createMapLoader().loadAsync(mapPath, Runnable::run).get();
+        MapFile expected = TestMaps.load(data);
+
+        assertEquals(expected.getTitle(), mapFile.getTitle());
+
+        for (MapPlane plane : MapPlane.values()) {
+            assertArrayEquals(plane.name(), expected.getPlane(plane), mapFile.getPlane(plane));
+        }
+    }
+
+    @Test
+    public void testCancelledLoadClosesTheFile() throws IOException {
+        byte[] data = TestMaps.createMap(256, 256, 2);
+        Path mapPath = writeMap(data);
+
+        /* Hold on to the decoding so the load can't complete before it's cancelled */
+        List<Runnable> tasks = new CopyOnWriteArrayList<>();
+        AsynchronousFileChannel channel = AsynchronousFileChannel.open(mapPath, StandardOpenOption.READ);
+
+        CompletableFuture<MapFile> result = new AsyncMapReader(TestMaps.createMapLoader(), channel, data.length, tasks::add).start();
+
+        assertTrue(channel.isOpen());
+
+        result.cancel(true);
+
+        assertFalse(channel.isOpen());
+
+        /* A decoding that was already scheduled does nothing */
+        for (Runnable task : tasks) {
+            task.run();
+        }
+
+        assertTrue(result.isCancelled());
+    }
+
+    private Path writeMap(byte[] data) throws IOException {
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+
+        Files.write(mapPath, data);
+
+        return mapPath;
+    }
+}
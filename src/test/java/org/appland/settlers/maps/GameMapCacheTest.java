@@ -0,0 +1,50 @@
+package org.appland.settlers.maps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class GameMapCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMapIsConvertedOnce() throws Exception, InvalidMapException {
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+
+        Files.write(mapPath, TestMaps.createMap(32, 32, 1));
+
+        GameMapCache gameMapCache = new GameMapCache(TestMaps.createMapLoader(), Long.MAX_VALUE);
+
+        /* Each game map is new, but they are created from the same converted map */
+        assertNotSame(gameMapCache.newGameMap(mapPath), gameMapCache.newGameMap(mapPath));
+        assertEquals(1, gameMapCache.getNumberOfConversions());
+    }
+
+    @Test
+    public void testModifiedMapIsConvertedAgain() throws Exception, InvalidMapException {
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+
+        Files.write(mapPath, TestMaps.createMap(32, 32, 1));
+
+        GameMapCache gameMapCache = new GameMapCache(TestMaps.createMapLoader(), Long.MAX_VALUE);
+
+        gameMapCache.newGameMap(mapPath);
+
+        Files.write(mapPath, TestMaps.createMap(32, 32, 2));
+        Files.setLastModifiedTime(mapPath, FileTime.fromMillis(Files.getLastModifiedTime(mapPath).toMillis() + 10000));
+
+        gameMapCache.newGameMap(mapPath);
+        gameMapCache.newGameMap(mapPath);
+
+        assertEquals(2, gameMapCache.getNumberOfConversions());
+    }
+}
@@ -0,0 +1,177 @@
+package org.appland.settlers.maps;
+
+import org.appland.settlers.model.DecorationType;
+import org.appland.settlers.model.DetailedVegetation;
+import org.appland.settlers.model.GameMap;
+import org.appland.settlers.model.Material;
+import org.appland.settlers.model.Point;
+import org.appland.settlers.model.Size;
+import org.appland.settlers.model.Stone;
+import org.appland.settlers.model.Tree;
+import org.appland.settlers.model.TreeSize;
+import org.appland.settlers.model.WildAnimal;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GameMapUpdaterTest {
+
+    @Test
+    public void testUpdatedGameMapIsTheSameAsAConvertedGameMap() throws Exception, InvalidMapException {
+        MapFile mapFile = TestMaps.load(TestMaps.createMap(32, 32, 1));
+
+        GameMapPrototype prototype = GameMapPrototype.fromMapFile(mapFile, true);
+        RecordingGameMap updatedGameMap = new RecordingGameMap(mapFile);
+
+        prototype.applyTo(updatedGameMap);
+
+        /* Change the heights and textures of some of the points, like a stroke with a brush */
+        for (int index = 300; index < 340; index++) {
+            mapFile.setUint8(MapPlane.HEIGHTS, index, mapFile.getUint8(MapPlane.HEIGHTS, index) + 3);
+            mapFile.setUint8(MapPlane.TEXTURE_BELOW, index, 9);
+        }
+
+        assertTrue(prototype.update(mapFile, mapFile.getDirtyPoints(), updatedGameMap));
+
+        RecordingGameMap convertedGameMap = new RecordingGameMap(mapFile);
+
+        GameMapPrototype.fromMapFile(mapFile, true).applyTo(convertedGameMap);
+
+        assertEquals(convertedGameMap.state, updatedGameMap.state);
+    }
+
+    @Test
+    public void testOnlyTheChangedValuesAreApplied() throws Exception, InvalidMapException {
+        MapFile mapFile = TestMaps.load(TestMaps.createMap(32, 32, 2));
+
+        GameMapPrototype prototype = GameMapPrototype.fromMapFile(mapFile, true);
+        int index = 10 * 32 + 10;
+
+        mapFile.setUint8(MapPlane.HEIGHTS, index, mapFile.getUint8(MapPlane.HEIGHTS, index) + 1);
+
+        RecordingGameMap gameMap = new RecordingGameMap(mapFile);
+
+        assertTrue(prototype.update(mapFile, mapFile.getDirtyPoints(), gameMap));
+
+        Point point = new Point(mapFile.getGamePointPosition(index));
+
+        assertEquals(1, gameMap.state.size());
+        assertEquals(mapFile.getUint8(MapPlane.HEIGHTS, index), gameMap.state.get("height " + point));
+    }
+
+    @Test
+    public void testUpdaterUpdatesTheGameMapInPlace() throws Exception, InvalidMapException {
+        MapLoader mapLoader = TestMaps.createMapLoader();
+        MapFile mapFile = TestMaps.load(TestMaps.createMap(32, 32, 3));
+
+        GameMapUpdater gameMapUpdater = new GameMapUpdater(mapLoader, mapFile);
+        GameMap gameMap = gameMapUpdater.getGameMap();
+
+        /* Nothing has changed */
+        assertTrue(gameMapUpdater.update());
+
+        mapFile.getSpot(500).setHeight(mapFile.getSpot(500).getHeight() + 1);
+
+        assertTrue(mapFile.hasDirtyPoints());
+        assertTrue(gameMapUpdater.update());
+        assertSame(gameMap, gameMapUpdater.getGameMap());
+        assertFalse(mapFile.hasDirtyPoints());
+    }
+
+    @Test
+    public void testRemovedStoneConvertsTheWholeMap() throws Exception, InvalidMapException {
+        MapLoader mapLoader = TestMaps.createMapLoader();
+        MapFile mapFile = TestMaps.load(TestMaps.createMap(32, 32, 4));
+
+        GameMapUpdater gameMapUpdater = new GameMapUpdater(mapLoader, mapFile);
+        GameMap gameMap = gameMapUpdater.getGameMap();
+
+        /* Remove a stone away from the edges, which are cropped out */
+        int index = 5 * 32 + 5;
+
+        while (!mapFile.getSpot(index).hasStone()) {
+            index++;
+        }
+
+        mapFile.getSpot(index).setObjectType((short) 0);
+
+        assertFalse(gameMapUpdater.update());
+        assertNotSame(gameMap, gameMapUpdater.getGameMap());
+        assertFalse(mapFile.hasDirtyPoints());
+    }
+
+    /**
+     * Keeps the last value set at each point, so game maps can be compared
+     */
+    private static class RecordingGameMap extends GameMap {
+        private final Map<String, Object> state = new HashMap<>();
+
+        private RecordingGameMap(MapFile mapFile) throws Exception {
+            super(new ArrayList<>(), mapFile.getWidth() * 2 + 2, mapFile.getHeight() + 3);
+        }
+
+        @Override
+        public void setDetailedVegetationBelow(Point point, DetailedVegetation vegetation) {
+            state.put("vegetation below " + point, vegetation);
+        }
+
+        @Override
+        public void setDetailedVegetationDownRight(Point point, DetailedVegetation vegetation) {
+            state.put("vegetation down right " + point, vegetation);
+        }
+
+        @Override
+        public void setMineralAmount(Point point, Material material, Size size) {
+            state.put("mineral " + point, material + " " + size);
+        }
+
+        @Override
+        public Stone placeStone(Point point) {
+            state.put("stone " + point, true);
+
+            return null;
+        }
+
+        @Override
+        public Tree placeTree(Point point, Tree.TreeType treeType, TreeSize treeSize) {
+            state.put("tree " + point, treeType + " " + treeSize);
+
+            return null;
+        }
+
+        @Override
+        public void placeDeadTree(Point point) {
+            state.put("dead tree " + point, true);
+        }
+
+        @Override
+        public void placeDecoration(Point point, DecorationType decorationType) {
+            state.put("decoration " + point, decorationType);
+        }
+
+        @Override
+        public WildAnimal placeWildAnimal(Point point) {
+            state.put("wild animal " + point, true);
+
+            return null;
+        }
+
+        @Override
+        public void setPossiblePlaceForHarbor(Point point) {
+            state.put("harbor " + point, true);
+        }
+
+        @Override
+        public void setHeightAtPoint(Point point, int height) {
+            state.put("height " + point, height);
+        }
+    }
+}
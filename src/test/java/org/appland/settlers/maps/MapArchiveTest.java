@@ -0,0 +1,96 @@
+package org.appland.settlers.maps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MapArchiveTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompressedEntryIsInflated() throws SettlersMapLoadingException, IOException {
+        byte[] data = TestMaps.createMap(32, 32, 1);
+
+        MapArchive mapArchive = MapArchive.open(createArchive(data));
+        List<MapArchive.Entry> entries = mapArchive.getMapEntries();
+
+        assertEquals(1, entries.size());
+
+        ByteBuffer inflated = entries.get(0).getData();
+        byte[] bytes = new byte[inflated.remaining()];
+
+        inflated.get(bytes);
+
+        assertArrayEquals(data, bytes);
+    }
+
+    @Test
+    public void testHeaderOfArchivedMapIsRead() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(48, 40, 3);
+
+        MapArchive.Entry entry = MapArchive.open(createArchive(data)).getMapEntries().get(0);
+        ByteBuffer entryData = entry.getData();
+
+        MapHeader mapHeader = TestMaps.createMapLoader().probeHeader(entryData);
+        MapFile mapFile = TestMaps.load(data);
+
+        assertEquals(0, entryData.position());
+        assertEquals(mapFile.getTitle(), mapHeader.getTitle());
+        assertEquals(48, mapHeader.getWidth());
+        assertEquals(40, mapHeader.getHeight());
+        assertEquals(mapFile.getMaxNumberOfPlayers(), mapHeader.getMaxNumberOfPlayers());
+    }
+
+    @Test(timeout = 10000)
+    public void testTruncatedCompressedEntryFails() throws SettlersMapLoadingException, IOException {
+        Path path = createArchive(TestMaps.createMap(32, 32, 2));
+        ByteBuffer archive = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+
+        /* Halve the compressed size in the central directory so the inflater runs out of input */
+        int centralDirectory = archive.getInt(archive.limit() - 22 + 16);
+        int compressedSize = archive.getInt(centralDirectory + 20);
+
+        archive.putInt(centralDirectory + 20, compressedSize / 2);
+
+        Files.write(path, archive.array());
+
+        try {
+            MapArchive.open(path).getMapEntries().get(0).getData();
+
+            fail("Expected the entry to be rejected");
+        } catch (SettlersMapLoadingException e) {
+        }
+    }
+
+    private Path createArchive(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(bytes)) {
+            zipOutputStream.putNextEntry(new ZipEntry("MAP00.SWD"));
+            zipOutputStream.write(data);
+            zipOutputStream.closeEntry();
+        }
+
+        Path path = temporaryFolder.newFile("maps.zip").toPath();
+
+        Files.write(path, bytes.toByteArray());
+
+        return path;
+    }
+}
@@ -0,0 +1,181 @@
+package org.appland.settlers.maps;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MapCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path cacheDirectory;
+    private Path mapPath;
+    private MapCache mapCache;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDirectory = temporaryFolder.newFolder("cache").toPath();
+        mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+
+        mapCache = new MapCache(cacheDirectory, TestMaps.createMapLoader());
+    }
+
+    @Test
+    public void testMapIsLoadedFromTheCacheTheSecondTime() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(33, 31, 1);
+
+        Files.write(mapPath, data);
+
+        MapFile loaded = mapCache.load(mapPath);
+        MapFile cached = mapCache.load(mapPath);
+
+        assertFalse(isFromCache(loaded));
+        assertTrue(isFromCache(cached));
+
+        assertEquals(loaded.getTitle(), cached.getTitle());
+        assertEquals(loaded.getStartingPoints(), cached.getStartingPoints());
+        assertSamePlanes(data, cached);
+
+        /* The cached map has everything needed to write it back unchanged */
+        ByteBuffer written = new MapWriter().writeToBuffer(cached);
+        byte[] bytes = new byte[written.remaining()];
+
+        written.get(bytes);
+
+        assertArrayEquals(data, bytes);
+    }
+
+    @Test
+    public void testChangedMapIsLoadedAgain() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        Files.write(mapPath, TestMaps.createMap(32, 32, 1));
+
+        mapCache.load(mapPath);
+
+        /* Same size, other contents and a later modification time */
+        byte[] changed = TestMaps.createMap(32, 32, 2);
+
+        Files.write(mapPath, changed);
+        setModifiedLater(mapPath);
+
+        MapFile mapFile = mapCache.load(mapPath);
+
+        assertFalse(isFromCache(mapFile));
+        assertSamePlanes(changed, mapFile);
+
+        /* The entry is replaced with the changed map */
+        MapFile cached = mapCache.load(mapPath);
+
+        assertTrue(isFromCache(cached));
+        assertSamePlanes(changed, cached);
+    }
+
+    @Test
+    public void testMapWithOtherSizeIsLoadedAgain() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        Files.write(mapPath, TestMaps.createMap(32, 32, 1));
+
+        FileTime modified = Files.getLastModifiedTime(mapPath);
+
+        mapCache.load(mapPath);
+
+        /* Also if the modification time is the same */
+        byte[] changed = TestMaps.createMap(40, 32, 1);
+
+        Files.write(mapPath, changed);
+        Files.setLastModifiedTime(mapPath, modified);
+
+        MapFile mapFile = mapCache.load(mapPath);
+
+        assertFalse(isFromCache(mapFile));
+        assertEquals(40, mapFile.getWidth());
+        assertSamePlanes(changed, mapFile);
+    }
+
+    @Test
+    public void testTouchedMapIsStillLoadedFromTheCache() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(32, 32, 1);
+
+        Files.write(mapPath, data);
+
+        mapCache.load(mapPath);
+
+        setModifiedLater(mapPath);
+
+        MapFile mapFile = mapCache.load(mapPath);
+
+        assertTrue(isFromCache(mapFile));
+        assertSamePlanes(data, mapFile);
+    }
+
+    @Test
+    public void testCorruptEntryIsReplaced() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(32, 32, 1);
+
+        Files.write(mapPath, data);
+
+        mapCache.load(mapPath);
+
+        /* Change a byte in the planes at the end of the entry */
+        Path entryPath = getEntryPath();
+        byte[] entry = Files.readAllBytes(entryPath);
+
+        entry[entry.length - 100] = (byte) (entry[entry.length - 100] + 1);
+
+        Files.write(entryPath, entry);
+
+        MapFile mapFile = mapCache.load(mapPath);
+
+        assertFalse(isFromCache(mapFile));
+        assertSamePlanes(data, mapFile);
+
+        MapFile cached = mapCache.load(mapPath);
+
+        assertTrue(isFromCache(cached));
+        assertSamePlanes(data, cached);
+    }
+
+    /**
+     * Maps loaded from the cache use the planes in the memory mapped entry, while maps loaded from the file have
+     * their planes on the heap
+     */
+    private static boolean isFromCache(MapFile mapFile) {
+        return mapFile.getPlaneBuffer(MapPlane.HEIGHTS).isDirect();
+    }
+
+    private void assertSamePlanes(byte[] data, MapFile mapFile) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        MapFile expected = TestMaps.load(data);
+
+        for (MapPlane plane : MapPlane.values()) {
+            assertArrayEquals(plane.name(), expected.getPlane(plane), mapFile.getPlane(plane));
+        }
+    }
+
+    private Path getEntryPath() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            List<Path> entries = files.collect(Collectors.toList());
+
+            assertEquals(1, entries.size());
+
+            return entries.get(0);
+        }
+    }
+
+    private static void setModifiedLater(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10000));
+    }
+}
@@ -0,0 +1,70 @@
+package org.appland.settlers.maps;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MapContainerTest {
+
+    @Test
+    public void testReadMapIsTheSameAsTheWrittenMap() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        for (boolean compress : new boolean[] {false, true}) {
+            MapFile mapFile = TestMaps.load(TestMaps.createMap(33, 31, 1));
+
+            MapFile readMapFile = new MapContainerReader(new MapContainerWriter(compress).writeToBuffer(mapFile)).readMapFile();
+
+            assertEquals(mapFile.getTitle(), readMapFile.getTitle());
+            assertEquals(mapFile.getAuthor(), readMapFile.getAuthor());
+            assertEquals(mapFile.getWidth(), readMapFile.getWidth());
+            assertEquals(mapFile.getHeight(), readMapFile.getHeight());
+            assertEquals(mapFile.getTerrainType(), readMapFile.getTerrainType());
+            assertEquals(mapFile.getPlayerFaces(), readMapFile.getPlayerFaces());
+            assertEquals(mapFile.getStartingPoints(), readMapFile.getStartingPoints());
+
+            for (MapPlane plane : MapPlane.values()) {
+                assertArrayEquals(plane.name(), mapFile.getPlane(plane), readMapFile.getPlane(plane));
+            }
+        }
+    }
+
+    @Test
+    public void testMapFromContainerIsWrittenBackUnchanged() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(32, 32, 2);
+
+        MapFile mapFile = new MapContainerReader(new MapContainerWriter(true).writeToBuffer(TestMaps.load(data))).readMapFile();
+
+        ByteBuffer written = new MapWriter().writeToBuffer(mapFile);
+        byte[] bytes = new byte[written.remaining()];
+
+        written.get(bytes);
+
+        assertArrayEquals(data, bytes);
+    }
+
+    @Test
+    public void testCorruptSectionIsDetected() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        ByteBuffer container = new MapContainerWriter(false).writeToBuffer(TestMaps.load(TestMaps.createMap(32, 32, 3)));
+
+        /* Change a byte in the stored heights */
+        ByteBuffer tableOfContents = container.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int heightsEntry = MapContainerReader.HEADER_SIZE + (1 + MapPlane.HEIGHTS.ordinal()) * MapContainerReader.TOC_ENTRY_SIZE;
+        int heightsOffset = (int) tableOfContents.getLong(heightsEntry + 8);
+
+        container.put(heightsOffset + 10, (byte) (container.get(heightsOffset + 10) + 1));
+
+        try {
+            new MapContainerReader(container).readMapFile();
+
+            fail("Expected the checksum to be wrong");
+        } catch (SettlersMapLoadingException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Checksum mismatch"));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.appland.settlers.maps;
+
+import org.junit.Test;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MapFileTest {
+
+    /* Even and odd heights place the first row differently, and an odd width ends the rows differently */
+    private static final int[][] DIMENSIONS = {{32, 32}, {33, 31}, {20, 7}};
+
+    @Test
+    public void testIndexOfIsTheInverseOfTheGamePoint() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        for (int[] dimensions : DIMENSIONS) {
+            MapFile mapFile = TestMaps.load(TestMaps.createMap(dimensions[0], dimensions[1], 1));
+
+            for (int index = 0; index < mapFile.getNumberOfPoints(); index++) {
+                int x = mapFile.getGamePointX(index);
+                int y = mapFile.getGamePointY(index);
+
+                assertEquals(index, mapFile.indexOf(x, y));
+
+                /* Game points between the points of a row are not in the map */
+                assertEquals(-1, mapFile.indexOf(x + 1, y));
+            }
+        }
+    }
+
+    @Test
+    public void testGamePointsFollowTheMapFilePositions() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        for (int[] dimensions : DIMENSIONS) {
+            int width = dimensions[0];
+            int height = dimensions[1];
+            MapFile mapFile = TestMaps.load(TestMaps.createMap(width, height, 2));
+
+            for (int index = 0; index < mapFile.getNumberOfPoints(); index++) {
+                Point expected = MapFile.mapFilePositionToGamePoint(width, height, new Point(index % width + 1, index / width + 1));
+
+                assertEquals(expected, mapFile.getGamePointPosition(index));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfOutsideTheMap() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        MapFile mapFile = TestMaps.load(TestMaps.createMap(32, 32, 3));
+
+        int top = mapFile.getGamePointY(0);
+        int bottom = mapFile.getGamePointY(mapFile.getNumberOfPoints() - 1);
+
+        assertEquals(-1, mapFile.indexOf(mapFile.getGamePointX(0), top + 1));
+        assertEquals(-1, mapFile.indexOf(mapFile.getGamePointX(0) - 2, top));
+        assertEquals(-1, mapFile.indexOf(mapFile.getGamePointX(31) + 2, top));
+        assertEquals(-1, mapFile.indexOf(mapFile.getGamePointX(mapFile.getNumberOfPoints() - 1), bottom - 1));
+    }
+
+    @Test
+    public void testNeighboursAreAtTheOffsetsOfTheDirections() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        for (int[] dimensions : DIMENSIONS) {
+            MapFile mapFile = TestMaps.load(TestMaps.createMap(dimensions[0], dimensions[1], 4));
+
+            for (int index = 0; index < mapFile.getNumberOfPoints(); index++) {
+                for (Direction direction : Direction.values()) {
+                    int neighbour = mapFile.getNeighbour(index, direction);
+
+                    if (neighbour == MapFile.NO_NEIGHBOUR) {
+                        assertEquals(-1, mapFile.indexOf(
+                                mapFile.getGamePointX(index) + direction.getDx(),
+                                mapFile.getGamePointY(index) + direction.getDy()));
+                    } else {
+                        assertEquals(mapFile.getGamePointX(index) + direction.getDx(), mapFile.getGamePointX(neighbour));
+                        assertEquals(mapFile.getGamePointY(index) + direction.getDy(), mapFile.getGamePointY(neighbour));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShadingMatchesTheNeighbours() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        for (int[] dimensions : DIMENSIONS) {
+            MapFile mapFile = TestMaps.load(TestMaps.createMap(dimensions[0], dimensions[1], 5));
+
+            mapFile.recomputeShading();
+
+            ByteBuffer shading = mapFile.getShading();
+
+            for (int index = 0; index < mapFile.getNumberOfPoints(); index++) {
+                assertEquals("Shading of point " + index, shadeWithNeighbours(mapFile, index), shading.get(index) & 0xff);
+            }
+        }
+    }
+
+    @Test
+    public void testMapMovedOffHeapKeepsItsPoints() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(33, 31, 4);
+        MapFile expected = TestMaps.load(data);
+        MapFile mapFile = TestMaps.load(data);
+
+        mapFile.moveOffHeap();
+
+        assertTrue(mapFile.isOffHeap());
+        assertTrue(mapFile.getPlaneBuffer(MapPlane.HEIGHTS).isDirect());
+
+        for (MapPlane plane : MapPlane.values()) {
+            assertArrayEquals(plane.name(), expected.getPlane(plane), mapFile.getPlane(plane));
+        }
+
+        assertEquals(expected.getRetainedBlock(MapBlock.ROADS), mapFile.getRetainedBlock(MapBlock.ROADS));
+
+        /* Points are changed in the memory off the heap */
+        mapFile.getSpot(100).setHeight(mapFile.getSpot(100).getHeight() + 1);
+
+        assertEquals(expected.getSpot(100).getHeight() + 1, mapFile.getPlaneBuffer(MapPlane.HEIGHTS).get(100) & 0xff);
+    }
+
+    @Test
+    public void testClosedMapCantBeUsed() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            MapFile mapFile = TestMaps.load(TestMaps.createMap(32, 32, 5));
+
+            if (offHeap) {
+                mapFile.moveOffHeap();
+            }
+
+            mapFile.close();
+
+            /* Closing again does nothing */
+            mapFile.close();
+
+            assertClosed(() -> mapFile.getSpot(100).getHeight());
+            assertClosed(() -> mapFile.getPlaneBuffer(MapPlane.HEIGHTS));
+            assertClosed(() -> mapFile.getRetainedBlock(MapBlock.ROADS));
+            assertClosed(() -> mapFile.getShading());
+            assertClosed(mapFile::moveOffHeap);
+        }
+    }
+
+    private static void assertClosed(Runnable use) {
+        try {
+            use.run();
+
+            fail("Expected the map to be closed");
+        } catch (IllegalStateException e) {
+            assertEquals("The map is closed", e.getMessage());
+        }
+    }
+
+    /**
+     * Calculates the shading of a point the slow way, by looking up each neighbour in the table of neighbours
+     */
+    private static int shadeWithNeighbours(MapFile mapFile, int index) {
+        int height = mapFile.getSpot(index).getHeight();
+
+        int value = Shading.FLAT +
+                9 * (heightOfNeighbour(mapFile, index, Direction.UP_RIGHT) - height) -
+                3 * (heightOfNeighbour(mapFile, index, Direction.UP_LEFT) - height) -
+                6 * (heightOfNeighbour(mapFile, index, Direction.LEFT) - height) -
+                9 * (heightOfNeighbour(mapFile, index, Direction.DOWN_LEFT) - height);
+
+        return Math.max(0, Math.min(Shading.MAX, value));
+    }
+
+    private static int heightOfNeighbour(MapFile mapFile, int index, Direction direction) {
+        int neighbour = mapFile.getNeighbour(index, direction);
+
+        return mapFile.getSpot(neighbour == MapFile.NO_NEIGHBOUR ? index : neighbour).getHeight();
+    }
+}
@@ -0,0 +1,161 @@
+package org.appland.settlers.maps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MapLoaderTest {
+
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 256;
+    private static final int NUMBER_OF_POINTS = WIDTH * HEIGHT;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testDecodingPointsOnlyAllocatesTheBlocks() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(WIDTH, HEIGHT, 1);
+
+        MapLoader mapLoader = TestMaps.createMapLoader();
+
+        /* Run once to get classes loaded */
+        mapLoader.loadMapFromStream(new ByteArrayInputStream(data));
+
+        /* Keep the smallest of a few runs, so allocations by the JIT compiler in the middle of a run don't count */
+        long allocated = Long.MAX_VALUE;
+
+        for (int run = 0; run < 5; run++) {
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
+
+            long allocatedBefore = getAllocatedBytes();
+
+            MapFile mapFile = mapLoader.loadMapFromStream(inputStream);
+
+            allocated = Math.min(allocated, getAllocatedBytes() - allocatedBefore);
+
+            assertEquals(NUMBER_OF_POINTS, mapFile.getNumberOfPoints());
+        }
+
+        /* Each block is read into a plane or kept as it is, so one byte per point and block is expected. Allow for
+           the header, the reusable buffer of the reader and other allocations that don't scale with the points */
+        long blocks = (long) MapBlock.values().length * NUMBER_OF_POINTS;
+
+        assertTrue("Allocated " + allocated + " bytes when decoding " + NUMBER_OF_POINTS + " points",
+                allocated < blocks + 64 * 1024);
+    }
+
+    @Test
+    public void testMemoryMappedMapIsTheSameAsAStreamedMap() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(33, 31, 1);
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+
+        Files.write(mapPath, data);
+
+        MapFile mapFile = TestMaps.createMapLoader().loadMapFromPath(mapPath);
+
+        assertSameMap(TestMaps.load(data), mapFile);
+
+        /* The blocks that are not decoded are kept as views of the mapped file */
+        assertTrue(mapFile.getRetainedBlock(MapBlock.ROADS).isDirect());
+    }
+
+    @Test
+    public void testLazilyLoadedMapDecodesEachBlockWhenItsUsed() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(33, 31, 2);
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+
+        Files.write(mapPath, data);
+
+        MapLoader mapLoader = TestMaps.createMapLoader();
+
+        mapLoader.setLazyLoading(true);
+
+        MapFile mapFile = mapLoader.loadMapFromPath(mapPath);
+
+        for (MapPlane plane : MapPlane.values()) {
+            assertFalse(plane.name(), mapFile.isPlaneDecoded(plane));
+        }
+
+        /* Only the plane that is used is decoded */
+        mapFile.getPlane(MapPlane.HEIGHTS);
+
+        assertTrue(mapFile.isPlaneDecoded(MapPlane.HEIGHTS));
+        assertFalse(mapFile.isPlaneDecoded(MapPlane.RESOURCES));
+
+        assertSameMap(TestMaps.load(data), mapFile);
+    }
+
+    @Test
+    public void testMapIsLoadedFromARangeOfBytes() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(33, 31, 3);
+
+        /* Surround the map with other data */
+        byte[] bytes = new byte[100 + data.length + 50];
+
+        Arrays.fill(bytes, (byte) 0x55);
+        System.arraycopy(data, 0, bytes, 100, data.length);
+
+        MapFile mapFile = TestMaps.createMapLoader().loadMapFromBytes(bytes, 100, data.length);
+
+        assertSameMap(TestMaps.load(data), mapFile);
+    }
+
+    @Test
+    public void testMapIsLoadedFromADirectBufferWithoutMovingIt() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(33, 31, 4);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(100 + data.length + 50);
+
+        buffer.position(100);
+        buffer.put(data);
+        buffer.position(100);
+        buffer.limit(100 + data.length);
+
+        MapFile mapFile = TestMaps.createMapLoader().loadMapFromBuffer(buffer);
+
+        assertEquals(100, buffer.position());
+        assertEquals(100 + data.length, buffer.limit());
+
+        assertSameMap(TestMaps.load(data), mapFile);
+    }
+
+    private static void assertSameMap(MapFile expected, MapFile mapFile) {
+        assertEquals(expected.getTitle(), mapFile.getTitle());
+        assertEquals(expected.getAuthor(), mapFile.getAuthor());
+        assertEquals(expected.getWidth(), mapFile.getWidth());
+        assertEquals(expected.getHeight(), mapFile.getHeight());
+        assertEquals(expected.getTerrainType(), mapFile.getTerrainType());
+        assertEquals(expected.getStartingPoints(), mapFile.getStartingPoints());
+
+        for (MapPlane plane : MapPlane.values()) {
+            assertArrayEquals(plane.name(), expected.getPlane(plane), mapFile.getPlane(plane));
+        }
+
+        for (MapBlock block : MapBlock.values()) {
+            if (block.getPlane() == null) {
+                assertEquals(block.name(), expected.getRetainedBlock(block), mapFile.getRetainedBlock(block));
+            }
+        }
+
+        assertEquals(expected.getTrailingBytes(), mapFile.getTrailingBytes());
+    }
+
+    private long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,151 @@
+package org.appland.settlers.maps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MapRepositoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentRequestsLoadTheMapOnce() throws Exception {
+        Path mapPath = writeMap("map.SWD", 64, 64, 1);
+        MapRepository mapRepository = new MapRepository(TestMaps.createMapLoader(), Long.MAX_VALUE);
+
+        int numberOfThreads = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<MapFile>> requests = new ArrayList<>();
+
+            for (int i = 0; i < numberOfThreads; i++) {
+                requests.add(executorService.submit((Callable<MapFile>) () -> {
+                    start.await();
+
+                    try {
+                        return mapRepository.getMap(mapPath);
+                    } catch (InvalidMapException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            MapFile first = requests.get(0).get();
+
+            for (Future<MapFile> request : requests) {
+                assertSame(first, request.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals(1, mapRepository.getNumberOfLoads());
+        assertEquals(1, mapRepository.getNumberOfCachedMaps());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedMapIsEvicted() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        Path first = writeMap("first.SWD", 32, 32, 1);
+        Path second = writeMap("second.SWD", 32, 32, 2);
+        Path third = writeMap("third.SWD", 32, 32, 3);
+
+        /* Room for two of the maps, which all have the same size */
+        long sizeOfMap = new MapRepository(TestMaps.createMapLoader(), Long.MAX_VALUE).getMap(first).estimateSizeInBytes();
+        MapRepository mapRepository = new MapRepository(TestMaps.createMapLoader(), sizeOfMap * 2 + sizeOfMap / 2);
+
+        MapFile firstMapFile = mapRepository.getMap(first);
+        mapRepository.getMap(second);
+
+        /* Use the first map so the second one is the least recently used */
+        assertSame(firstMapFile, mapRepository.getMap(first));
+
+        mapRepository.getMap(third);
+
+        assertEquals(3, mapRepository.getNumberOfLoads());
+        assertEquals(2, mapRepository.getNumberOfCachedMaps());
+        assertEquals(sizeOfMap * 2, mapRepository.getSizeInBytes());
+
+        /* The first map is still cached and the second one is loaded again */
+        assertSame(firstMapFile, mapRepository.getMap(first));
+        assertEquals(3, mapRepository.getNumberOfLoads());
+
+        mapRepository.getMap(second);
+
+        assertEquals(4, mapRepository.getNumberOfLoads());
+        assertEquals(2, mapRepository.getNumberOfCachedMaps());
+    }
+
+    @Test
+    public void testModifiedMapIsLoadedAgain() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        Path mapPath = writeMap("map.SWD", 32, 32, 1);
+        MapRepository mapRepository = new MapRepository(TestMaps.createMapLoader(), Long.MAX_VALUE);
+
+        MapFile mapFile = mapRepository.getMap(mapPath);
+
+        Files.setLastModifiedTime(mapPath, FileTime.fromMillis(Files.getLastModifiedTime(mapPath).toMillis() + 10000));
+
+        assertNotSame(mapFile, mapRepository.getMap(mapPath));
+        assertEquals(2, mapRepository.getNumberOfLoads());
+        assertEquals(1, mapRepository.getNumberOfCachedMaps());
+    }
+
+    @Test
+    public void testFailedLoadIsNotKept() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+        MapRepository mapRepository = new MapRepository(TestMaps.createMapLoader(), Long.MAX_VALUE);
+
+        /* A map without players */
+        byte[] data = TestMaps.createMap(32, 32, 1);
+
+        data[35] = 0;
+
+        Files.write(mapPath, data);
+
+        try {
+            mapRepository.getMap(mapPath);
+
+            fail("Expected the map to fail to load");
+        } catch (InvalidMapException e) {
+        }
+
+        /* The next request loads the map again instead of waiting for the failed load */
+        data[35] = 3;
+
+        Files.write(mapPath, data);
+
+        mapRepository.getMap(mapPath);
+
+        assertEquals(1, mapRepository.getNumberOfLoads());
+        assertEquals(1, mapRepository.getNumberOfCachedMaps());
+    }
+
+    private Path writeMap(String name, int width, int height, long seed) throws IOException {
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve(name);
+
+        Files.write(mapPath, TestMaps.createMap(width, height, seed));
+
+        return mapPath;
+    }
+}
@@ -0,0 +1,167 @@
+package org.appland.settlers.maps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MapWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testLoadedMapIsWrittenBackUnchanged() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = TestMaps.createMap(33, 31, 2);
+
+        assertArrayEquals(data, write(TestMaps.load(data)));
+    }
+
+    @Test
+    public void testNonStandardFileHeaderIsWrittenBackUnchanged() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = withNonStandardFileHeader(TestMaps.createMap(32, 32, 3));
+
+        assertArrayEquals(data, write(TestMaps.load(data)));
+
+        /* Also when the map is loaded from a buffer, where the header is kept as a view */
+        MapLoader mapLoader = TestMaps.createMapLoader();
+
+        assertArrayEquals(data, write(mapLoader.loadMapFromBytes(data, 0, data.length)));
+    }
+
+    @Test
+    public void testOnlyChangedFieldsOfTheFileHeaderAreWritten() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = withNonStandardFileHeader(TestMaps.createMap(32, 32, 4));
+
+        MapFile mapFile = TestMaps.load(data);
+
+        mapFile.setAuthor("Someone else");
+
+        byte[] written = write(mapFile);
+
+        /* Only the 20 bytes of the author differ */
+        byte[] expected = Arrays.copyOf(data, data.length);
+        byte[] author = "Someone else".getBytes(StandardCharsets.US_ASCII);
+
+        Arrays.fill(expected, 36, 56, (byte) 0);
+        System.arraycopy(author, 0, expected, 36, author.length);
+
+        assertArrayEquals(expected, written);
+
+        assertEquals("Someone else", TestMaps.load(written).getAuthor());
+    }
+
+    @Test
+    public void testWrittenMapLoadsTheSame() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        MapFile mapFile = TestMaps.load(TestMaps.createMap(40, 20, 5));
+
+        mapFile.getSpot(100).setHeight(mapFile.getSpot(100).getHeight() + 1);
+
+        MapFile writtenMapFile = TestMaps.load(write(mapFile));
+
+        assertEquals(mapFile.getTitle(), writtenMapFile.getTitle());
+        assertEquals(mapFile.getWidth(), writtenMapFile.getWidth());
+        assertEquals(mapFile.getHeight(), writtenMapFile.getHeight());
+        assertEquals(mapFile.getStartingPoints(), writtenMapFile.getStartingPoints());
+
+        for (MapPlane plane : MapPlane.values()) {
+            assertArrayEquals(plane.name(), mapFile.getPlane(plane), writtenMapFile.getPlane(plane));
+        }
+    }
+
+    @Test
+    public void testMemoryMappedMapIsWrittenBackUnchanged() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = withNonStandardFileHeader(TestMaps.createMap(33, 31, 7));
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+
+        Files.write(mapPath, data);
+
+        /* Both when the blocks are read right away and when they are decoded from the mapping as they are used */
+        for (boolean lazyLoading : new boolean[] {false, true}) {
+            MapLoader mapLoader = TestMaps.createMapLoader();
+
+            mapLoader.setLazyLoading(lazyLoading);
+
+            assertArrayEquals(data, write(mapLoader.loadMapFromPath(mapPath)));
+        }
+    }
+
+    @Test
+    public void testMemoryMappedMapIsWrittenBackToItsFile() throws SettlersMapLoadingException, IOException, InvalidMapException {
+        byte[] data = withNonStandardFileHeader(TestMaps.createMap(64, 64, 6));
+        Path mapPath = temporaryFolder.getRoot().toPath().resolve("map.SWD");
+
+        Files.write(mapPath, data);
+
+        /* The loaded map keeps views of the file for its header, unused blocks and trailing bytes */
+        MapFile mapFile = TestMaps.createMapLoader().loadMapFromPath(mapPath);
+
+        new MapWriter().write(mapFile, mapPath);
+
+        assertArrayEquals(data, Files.readAllBytes(mapPath));
+
+        /* The map still holds the data it was loaded with, and can be changed and saved again */
+        mapFile.setAuthor("Someone else");
+
+        new MapWriter().write(mapFile, mapPath);
+
+        MapFile writtenMapFile = TestMaps.createMapLoader().loadMapFromPath(mapPath);
+
+        assertEquals("Someone else", writtenMapFile.getAuthor());
+        assertEquals(data.length, Files.size(mapPath));
+
+        for (MapPlane plane : MapPlane.values()) {
+            assertArrayEquals(plane.name(), mapFile.getPlane(plane), writtenMapFile.getPlane(plane));
+        }
+
+        try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /**
+     * Sets values in the file header that the loader ignores or reads differently than the writer would write them
+     */
+    private byte[] withNonStandardFileHeader(byte[] data) {
+        byte[] result = Arrays.copyOf(data, data.length + 3);
+
+        /* Bytes after the end of the title */
+        result[27] = 'x';
+
+        /* Limited play as another value than 1 */
+        result[84] = 7;
+
+        /* A starting position and a face for a player that is not in the map */
+        result[56 + 5 * 2] = 42;
+        result[85 + 5] = 9;
+
+        /* Another file id and unused bytes that are not zero */
+        result[MapLoader.FILE_HEADER_SIZE - 10] = 0x12;
+        result[MapLoader.FILE_HEADER_SIZE - 6] = 1;
+
+        /* Bytes after the footer */
+        result[data.length] = 1;
+        result[data.length + 2] = 9;
+
+        return result;
+    }
+
+    private byte[] write(MapFile mapFile) {
+        ByteBuffer buffer = new MapWriter().writeToBuffer(mapFile);
+        byte[] bytes = new byte[buffer.remaining()];
+
+        buffer.get(bytes);
+
+        return bytes;
+    }
+}
@@ -0,0 +1,122 @@
+package org.appland.settlers.maps;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamReaderTest {
+
+    private static final int NUMBER_OF_POINTS = 256 * 256;
+
+    @Test
+    public void testBulkReadsMatchSingleReads() throws IOException {
+        byte[] data = createData(NUMBER_OF_POINTS * 4);
+
+        StreamReader singleReader = new StreamReader(new ByteArrayInputStream(data), ByteOrder.LITTLE_ENDIAN);
+        StreamReader bulkReader = new StreamReader(new ByteArrayInputStream(data), ByteOrder.LITTLE_ENDIAN);
+
+        /* Read a plane that doesn't line up with the size of the internal buffer */
+        byte[] plane = new byte[NUMBER_OF_POINTS + 3];
+
+        bulkReader.readUint8Plane(plane);
+
+        for (byte value : plane) {
+            assertEquals(value & 0xff, singleReader.getUint8());
+        }
+
+        /* Read uint16 values */
+        int[] uint16s = new int[1001];
+
+        bulkReader.readUint16Array(uint16s);
+
+        for (int value : uint16s) {
+            assertEquals(value, singleReader.getUint16());
+        }
+
+        /* Skip and read a uint32 */
+        bulkReader.skip(10_000);
+        singleReader.skip(10_000);
+
+        assertEquals(singleReader.getUint32(), bulkReader.getUint32());
+        assertFalse(bulkReader.isEof());
+    }
+
+    @Test
+    public void testReadingPastTheEndGivesZerosAndEof() throws IOException {
+        StreamReader streamReader = new StreamReader(new ByteArrayInputStream(new byte[] {1, 2, 3}), ByteOrder.LITTLE_ENDIAN);
+
+        byte[] plane = new byte[5];
+
+        streamReader.readUint8Plane(plane);
+
+        assertArrayEquals(new byte[] {1, 2, 3, 0, 0}, plane);
+        assertTrue(streamReader.isEof());
+    }
+
+    @Test
+    public void testDecodingPointsDoesNotAllocate() throws IOException {
+        byte[] data = createData(NUMBER_OF_POINTS * 8);
+        byte[] plane = new byte[NUMBER_OF_POINTS];
+        int[] uint16s = new int[7];
+
+        /* Run once to get classes loaded */
+        readPoints(new StreamReader(new ByteArrayInputStream(data), ByteOrder.LITTLE_ENDIAN), plane, uint16s);
+
+        /* Keep the smallest of a few runs, so allocations by the JIT compiler in the middle of a run don't count */
+        long allocated = Long.MAX_VALUE;
+
+        for (int run = 0; run < 5; run++) {
+            StreamReader streamReader = new StreamReader(new ByteArrayInputStream(data), ByteOrder.LITTLE_ENDIAN);
+
+            long allocatedBefore = getAllocatedBytes();
+
+            readPoints(streamReader, plane, uint16s);
+
+            allocated = Math.min(allocated, getAllocatedBytes() - allocatedBefore);
+        }
+
+        /* Allow for a small amount of unrelated allocation but nothing that scales with the number of points */
+        assertTrue("Allocated " + allocated + " bytes when decoding " + NUMBER_OF_POINTS + " points",
+                allocated < 1024);
+    }
+
+    private void readPoints(StreamReader streamReader, byte[] plane, int[] uint16s) throws IOException {
+        streamReader.readUint8Plane(plane);
+        streamReader.skip(NUMBER_OF_POINTS);
+        streamReader.readUint16Array(uint16s);
+
+        for (int i = 0; i < NUMBER_OF_POINTS; i++) {
+            streamReader.getUint8();
+        }
+
+        for (int i = 0; i < NUMBER_OF_POINTS / 4; i++) {
+            streamReader.getUint16();
+            streamReader.getUint32();
+        }
+    }
+
+    private long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private byte[] createData(int length) {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(length);
+
+        for (int i = 0; i < length; i++) {
+            byteBuffer.put((byte) (i * 31 + i / 7));
+        }
+
+        return byteBuffer.array();
+    }
+}
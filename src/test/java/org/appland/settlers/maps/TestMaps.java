@@ -0,0 +1,147 @@
+package org.appland.settlers.maps;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Creates map files in the SWD/WLD format for the tests. The points get random values that the loader and the
+ * conversion to a game map accept, so the same map is created again for the same seed.
+ *
+ */
+final class TestMaps {
+    private static final int BLOCK_HEADER_SIZE = 16;
+
+    private static final int[] TEXTURES = {0, 8, 9, 5, 1};
+    private static final int[] OBJECT_TYPES = {0, 0, 0, 0xC4, 0xC5, 0xC8, 0xC9, 0xCC, 0xCD};
+    private static final int[] BUILDABLE_SITES = {0, 1, 2, 3, 4, 5, 9, 12, 13, 104, 120};
+    private static final int[] RESOURCES = {0, 33, 135, 64, 67, 72, 79, 80, 85, 88, 95};
+
+    private TestMaps() { }
+
+    /**
+     * Returns a map with a short title, three players and two water and land masses
+     *
+     * @param width
+     * @param height
+     * @param seed
+     * @return
+     */
+    static byte[] createMap(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int numberOfPoints = width * height;
+
+        ByteBuffer buffer = ByteBuffer.allocate(MapLoader.FILE_HEADER_SIZE +
+                MapBlock.values().length * (BLOCK_HEADER_SIZE + numberOfPoints) + 1).order(ByteOrder.LITTLE_ENDIAN);
+
+        /* File header */
+        buffer.put("WORLD_V1.0".getBytes(StandardCharsets.US_ASCII));
+        putString(buffer, "Test map " + seed, 20);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.put((byte) 0);
+        buffer.put((byte) 3);
+        putString(buffer, "Author", 20);
+
+        for (int coordinate = 0; coordinate < 2; coordinate++) {
+            for (int i = 0; i < 7; i++) {
+                buffer.putShort((short) (i < 3 ? 5 + i * 5 : 0));
+            }
+        }
+
+        buffer.put((byte) 0);
+        buffer.put(new byte[] {0, 3, 6, 0, 0, 0, 0});
+
+        for (int i = 0; i < 250; i++) {
+            buffer.put((byte) (i < 2 ? 1 : 0));
+            buffer.putShort((short) (i < 2 ? 3 + i : 0));
+            buffer.putShort((short) (i < 2 ? 4 + i : 0));
+            buffer.putInt(i < 2 ? 1000 + i : 0);
+        }
+
+        buffer.put((byte) 0x11);
+        buffer.put((byte) 0x27);
+        buffer.putInt(0);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+
+        /* Blocks */
+        for (MapBlock block : MapBlock.values()) {
+            buffer.putShort((short) 10000);
+            buffer.putInt(0);
+            buffer.putShort((short) width);
+            buffer.putShort((short) height);
+            buffer.putShort((short) 1);
+            buffer.putInt(numberOfPoints);
+
+            for (int i = 0; i < numberOfPoints; i++) {
+                buffer.put((byte) valueOf(block, random));
+            }
+        }
+
+        /* Footer */
+        buffer.put((byte) 0xFF);
+
+        return buffer.array();
+    }
+
+    /**
+     * Returns a map loader that doesn't print debug information
+     *
+     * @return
+     */
+    static MapLoader createMapLoader() {
+        MapLoader mapLoader = new MapLoader();
+
+        mapLoader.debug = false;
+
+        return mapLoader;
+    }
+
+    /**
+     * Loads the map through a stream with a map loader that doesn't print debug information
+     *
+     * @param data
+     * @return
+     * @throws SettlersMapLoadingException
+     * @throws IOException
+     * @throws InvalidMapException
+     */
+    static MapFile load(byte[] data) throws SettlersMapLoadingException, IOException, InvalidMapException {
+        return createMapLoader().loadMapFromStream(new ByteArrayInputStream(data));
+    }
+
+    private static int valueOf(MapBlock block, Random random) {
+        switch (block) {
+            case HEIGHTS:
+                return random.nextInt(60);
+            case TEXTURES_BELOW:
+            case TEXTURES_DOWN_RIGHT:
+                return TEXTURES[random.nextInt(TEXTURES.length)];
+            case OBJECT_PROPERTIES:
+                return random.nextInt(0x38);
+            case OBJECT_TYPES:
+                return OBJECT_TYPES[random.nextInt(OBJECT_TYPES.length)];
+            case ANIMALS:
+                return random.nextInt(29) < 20 ? 0 : random.nextInt(9) + 1;
+            case BUILDABLE_SITES:
+                return BUILDABLE_SITES[random.nextInt(BUILDABLE_SITES.length)];
+            case CURSOR_POSITIONS:
+                return 0;
+            case RESOURCES:
+                return RESOURCES[random.nextInt(RESOURCES.length)];
+            default:
+                return random.nextInt(256);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String string, int length) {
+        byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+
+        buffer.put(bytes);
+        buffer.put(new byte[length - bytes.length]);
+    }
+}